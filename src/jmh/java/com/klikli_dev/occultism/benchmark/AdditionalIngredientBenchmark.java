@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.benchmark;
+
+import com.klikli_dev.occultism.common.ritual.AdditionalIngredientMatcher;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.crafting.Ingredient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching ritual additional ingredients against the items on sacrificial bowls, checked whenever a ritual is
+ * started and while it runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdditionalIngredientBenchmark {
+
+    @Param({"4", "8", "16"})
+    public int ingredients;
+
+    private List<Ingredient> ingredientList;
+    private List<ItemStack> matchingItems;
+    private List<ItemStack> missingItems;
+
+    @Setup
+    public void setup() {
+        List<Item> items = BenchmarkFixtures.getItems();
+        Random random = new Random(42);
+
+        this.ingredientList = new ArrayList<>();
+        this.matchingItems = new ArrayList<>();
+        for (int i = 0; i < this.ingredients; i++) {
+            Item item = items.get(random.nextInt(items.size()));
+            //every other ingredient accepts several items, like tag ingredients do
+            if (i % 2 == 0)
+                this.ingredientList.add(Ingredient.of(item));
+            else
+                this.ingredientList.add(Ingredient.of(item, items.get(random.nextInt(items.size())),
+                        items.get(random.nextInt(items.size()))));
+            this.matchingItems.add(new ItemStack(item));
+        }
+        //bowls are not searched in recipe order
+        Collections.shuffle(this.matchingItems, random);
+
+        this.missingItems = new ArrayList<>(this.matchingItems);
+        this.missingItems.set(this.missingItems.size() - 1, ItemStack.EMPTY);
+    }
+
+    @Benchmark
+    public boolean match() {
+        return AdditionalIngredientMatcher.matches(this.ingredientList, this.matchingItems);
+    }
+
+    @Benchmark
+    public boolean mismatch() {
+        return AdditionalIngredientMatcher.matches(this.ingredientList, this.missingItems);
+    }
+}
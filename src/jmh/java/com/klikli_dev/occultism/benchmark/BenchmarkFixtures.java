@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.benchmark;
+
+import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
+import com.klikli_dev.occultism.common.misc.StorageControllerItemStackHandler;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shared setup for the benchmarks. Only bootstraps the vanilla registries, no server, level or mod loading is
+ * involved, so the benchmarks can run headless.
+ */
+public class BenchmarkFixtures {
+
+    public static final int STACK_SIZE = 1024;
+
+    private static List<Item> items;
+
+    //region Static Methods
+    public static synchronized void bootstrap() {
+        if (items != null)
+            return;
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        items = BuiltInRegistries.ITEM.stream().filter(item -> item != Items.AIR).toList();
+    }
+
+    public static List<Item> getItems() {
+        bootstrap();
+        return items;
+    }
+
+    /**
+     * Creates a stack of the given kind. Kinds map onto all vanilla items, every 8th kind and all kinds beyond the
+     * number of items carry a custom name, so the mix of plain and nbt stacks resembles a real storage.
+     *
+     * @param kind  the kind of stack, equal kinds produce stacks that can be merged.
+     * @param count the stack size.
+     * @return the stack.
+     */
+    public static ItemStack createStack(int kind, int count) {
+        List<Item> items = getItems();
+        ItemStack stack = new ItemStack(items.get(kind % items.size()), count);
+        if (kind % 8 == 0 || kind >= items.size())
+            stack.setHoverName(Component.literal("Stack " + kind));
+        return stack;
+    }
+
+    /**
+     * @return a storage controller that ignores all calls. The item handler only reports content changes to it.
+     */
+    public static IStorageController createStorageController() {
+        return (IStorageController) Proxy.newProxyInstance(IStorageController.class.getClassLoader(),
+                new Class<?>[]{IStorageController.class}, (proxy, method, args) -> null);
+    }
+
+    /**
+     * Creates a storage with the given number of slots, filled to 90% with full stacks of slots / 4 different kinds.
+     *
+     * @param slots the number of slots.
+     * @param seed  the seed for picking the kinds.
+     * @return the filled item handler.
+     */
+    public static StorageControllerItemStackHandler createFilledStorage(int slots, long seed) {
+        StorageControllerItemStackHandler handler = new StorageControllerItemStackHandler(createStorageController(),
+                slots, STACK_SIZE, true);
+        Random random = new Random(seed);
+        int variety = Math.max(1, slots / 4);
+        for (int i = 0; i < slots * 9 / 10; i++) {
+            handler.insertStack(createStack(random.nextInt(variety), STACK_SIZE), false);
+        }
+        return handler;
+    }
+    //endregion Static Methods
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.benchmark;
+
+import com.klikli_dev.occultism.network.CompactCodec;
+import com.klikli_dev.occultism.network.MessageUpdateStacks;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.world.item.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and reading the stack snapshots sent to the storage gui, plus the raw stack encoding with the compact
+ * codec compared to vanilla item encoding. The encoded sizes are printed during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StackSnapshotBenchmark {
+
+    @Param({"1000", "4000", "12000"})
+    public int stacks;
+
+    private List<ItemStack> stackList;
+    private int[] ids;
+    private byte[] encodedSnapshot;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.bootstrap();
+        this.stackList = new ArrayList<>(this.stacks);
+        this.ids = new int[this.stacks];
+        for (int i = 0; i < this.stacks; i++) {
+            this.stackList.add(BenchmarkFixtures.createStack(i, BenchmarkFixtures.STACK_SIZE * (1 + i % 50)));
+            this.ids[i] = i;
+        }
+
+        MessageUpdateStacks message = this.createSnapshot();
+        message.compress();
+        FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer());
+        message.encode(buf);
+        this.encodedSnapshot = new byte[buf.readableBytes()];
+        buf.readBytes(this.encodedSnapshot);
+
+        System.out.printf("%n%d stacks: compact %d bytes, vanilla %d bytes, snapshot %d bytes deflated%n",
+                this.stacks, this.writeCompact().readableBytes(), this.writeVanilla().readableBytes(),
+                this.encodedSnapshot.length);
+    }
+
+    private MessageUpdateStacks createSnapshot() {
+        return new MessageUpdateStacks(0, this.ids, this.stackList, this.stacks, this.stacks);
+    }
+
+    @Benchmark
+    public MessageUpdateStacks deflate() {
+        MessageUpdateStacks message = this.createSnapshot();
+        message.compress();
+        return message;
+    }
+
+    @Benchmark
+    public MessageUpdateStacks inflate() {
+        MessageUpdateStacks message = new MessageUpdateStacks(new FriendlyByteBuf(Unpooled.wrappedBuffer(this.encodedSnapshot)));
+        message.uncompress();
+        return message;
+    }
+
+    @Benchmark
+    public ByteBuf writeCompact() {
+        FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer());
+        CompactCodec.Writer writer = CompactCodec.writer(buf);
+        for (ItemStack stack : this.stackList) {
+            writer.writeStack(stack);
+        }
+        return buf;
+    }
+
+    /**
+     * Baseline, the stack encoding used before the compact codec.
+     */
+    @Benchmark
+    public ByteBuf writeVanilla() {
+        FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer());
+        for (ItemStack stack : this.stackList) {
+            buf.writeItem(stack);
+            buf.writeInt(stack.getCount());
+        }
+        return buf;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.benchmark;
+
+import com.klikli_dev.occultism.common.misc.ItemStackKey;
+import com.klikli_dev.occultism.common.misc.StorageControllerItemIndex;
+import com.klikli_dev.occultism.common.misc.StorageControllerItemStackHandler;
+import net.minecraft.world.item.ItemStack;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert, extract and listing of storage controller contents, the operations behind spirit jobs, hoppers and the
+ * storage gui.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageControllerBenchmark {
+
+    @Param({"1000", "4000", "12000"})
+    public int slots;
+
+    private StorageControllerItemStackHandler handler;
+    private ItemStack[] probes;
+    private int probeIndex;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.bootstrap();
+        this.handler = BenchmarkFixtures.createFilledStorage(this.slots, 42);
+
+        //half of the probes are already stored, the other half needs a free slot
+        int variety = Math.max(1, this.slots / 4);
+        this.probes = new ItemStack[64];
+        for (int i = 0; i < this.probes.length; i++) {
+            int kind = i % 2 == 0 ? i * 7 % variety : variety + i;
+            this.probes[i] = BenchmarkFixtures.createStack(kind, 16);
+        }
+    }
+
+    private ItemStack nextProbe() {
+        this.probeIndex = (this.probeIndex + 1) % this.probes.length;
+        return this.probes[this.probeIndex];
+    }
+
+    @Benchmark
+    public ItemStack insertSimulated() {
+        return this.handler.insertStack(this.nextProbe(), true);
+    }
+
+    /**
+     * Inserts and extracts again, so the contents stay the same across invocations.
+     */
+    @Benchmark
+    public ItemStack insertThenExtract() {
+        ItemStack probe = this.nextProbe();
+        this.handler.insertStack(probe.copy(), false);
+        return this.handler.extractStack(ItemStackKey.lookup(probe), probe.getCount(), false);
+    }
+
+    @Benchmark
+    public ItemStack extractSimulated() {
+        ItemStack probe = this.nextProbe();
+        return this.handler.extractStack(ItemStackKey.lookup(probe), probe.getCount(), true);
+    }
+
+    /**
+     * Lists the aggregated contents like the storage gui snapshot does.
+     */
+    @Benchmark
+    public void getStacks(Blackhole blackhole) {
+        List<ItemStack> stacks = new ArrayList<>();
+        for (StorageControllerItemIndex.Entry entry : this.handler.getIndex().getEntries()) {
+            stacks.add(entry.getKey().toStack(entry.getTotalCountClamped()));
+        }
+        blackhole.consume(stacks);
+    }
+}
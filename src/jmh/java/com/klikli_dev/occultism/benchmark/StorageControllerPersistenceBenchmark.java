@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.benchmark;
+
+import com.klikli_dev.occultism.common.misc.ItemStackKey;
+import com.klikli_dev.occultism.common.misc.StorageControllerItemStackHandler;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.world.item.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading storage controller contents in the compact format compared to the old one-tag-per-slot format.
+ * The serialized sizes are printed during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageControllerPersistenceBenchmark {
+
+    @Param({"1000", "4000", "12000"})
+    public int slots;
+
+    private StorageControllerItemStackHandler handler;
+    private ItemStack probe;
+    private CompoundTag compactNbt;
+    private CompoundTag legacyNbt;
+
+    /**
+     * Writes the format used before the compact one, kept here as baseline.
+     */
+    private static CompoundTag serializeLegacy(StorageControllerItemStackHandler handler) {
+        ListTag nbtTagList = new ListTag();
+        for (int i = 0; i < handler.getSlots(); i++) {
+            ItemStack stack = handler.getStackInSlot(i);
+            if (!stack.isEmpty()) {
+                CompoundTag itemTag = new CompoundTag();
+                itemTag.putInt("Slot", i);
+                stack.save(itemTag);
+                itemTag.putInt("RealSize", stack.getCount());
+                nbtTagList.add(itemTag);
+            }
+        }
+        CompoundTag nbt = new CompoundTag();
+        nbt.put("Items", nbtTagList);
+        nbt.putInt("Size", handler.getSlots());
+        return nbt;
+    }
+
+    private static int sizeOf(CompoundTag nbt, boolean compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (compressed)
+            NbtIo.writeCompressed(nbt, out);
+        else
+            NbtIo.write(nbt, new DataOutputStream(out));
+        return out.size();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkFixtures.bootstrap();
+        this.handler = BenchmarkFixtures.createFilledStorage(this.slots, 42);
+        this.probe = BenchmarkFixtures.createStack(0, 1);
+        this.compactNbt = this.handler.serializeNBT();
+        this.legacyNbt = serializeLegacy(this.handler);
+
+        System.out.printf("%n%d slots: compact %d bytes (%d compressed), legacy %d bytes (%d compressed)%n",
+                this.slots, sizeOf(this.compactNbt, false), sizeOf(this.compactNbt, true),
+                sizeOf(this.legacyNbt, false), sizeOf(this.legacyNbt, true));
+    }
+
+    /**
+     * Touches the contents first, otherwise the cached result of the previous save would be returned.
+     */
+    @Benchmark
+    public CompoundTag save() {
+        this.handler.insertStack(this.probe.copy(), false);
+        this.handler.extractStack(ItemStackKey.lookup(this.probe), 1, false);
+        return this.handler.serializeNBT();
+    }
+
+    @Benchmark
+    public CompoundTag saveLegacy() {
+        return serializeLegacy(this.handler);
+    }
+
+    /**
+     * Loading is deferred until first access, so access the index to include it.
+     */
+    @Benchmark
+    public Object load() {
+        StorageControllerItemStackHandler handler = new StorageControllerItemStackHandler(
+                BenchmarkFixtures.createStorageController(), this.slots, BenchmarkFixtures.STACK_SIZE, true);
+        handler.deserializeNBT(this.compactNbt);
+        return handler.getIndex();
+    }
+
+    @Benchmark
+    public Object loadLegacy() {
+        StorageControllerItemStackHandler handler = new StorageControllerItemStackHandler(
+                BenchmarkFixtures.createStorageController(), this.slots, BenchmarkFixtures.STACK_SIZE, true);
+        handler.deserializeNBT(this.legacyNbt);
+        return handler.getIndex();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.Connection;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.protocol.PacketFlow;
+import net.minecraft.resources.ResourceLocation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting a large payload into split packets and reassembling it with {@link PacketSplitter}, without a channel.
+ * Lives in the network package to reach the package-private split and reassembly entry points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacketSplitBenchmark {
+
+    @Param({"2", "8", "32"})
+    public int megabytes;
+
+    private PacketSplitter splitter;
+    private Connection connection;
+    private ByteBuf payload;
+    private List<ByteBuf> wirePackets;
+
+    @Setup
+    public void setup() {
+        this.splitter = new PacketSplitter(64, null, new ResourceLocation("occultism", "benchmark"));
+        this.connection = new Connection(PacketFlow.CLIENTBOUND);
+        byte[] bytes = new byte[this.megabytes * 1024 * 1024];
+        new Random(42).nextBytes(bytes);
+        this.payload = Unpooled.wrappedBuffer(bytes);
+        this.wirePackets = this.split();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.wirePackets.forEach(ByteBuf::release);
+    }
+
+    /**
+     * Splits the payload and encodes each split packet like the channel does when sending it.
+     */
+    @Benchmark
+    public List<ByteBuf> split() {
+        List<ByteBuf> packets = new ArrayList<>(PacketSplitter.getPacketCount(this.payload.readableBytes()));
+        this.splitter.splitPayload(this.payload, 0, message -> {
+            FriendlyByteBuf wire = new FriendlyByteBuf(Unpooled.buffer(message.getPayload().readableBytes() + 16));
+            MessageSplitPacket.encode(message, wire);
+            packets.add(wire);
+        });
+        return packets;
+    }
+
+    /**
+     * Decodes the split packets like the channel does when receiving them and reassembles the payload.
+     */
+    @Benchmark
+    public long reassemble() {
+        ByteBuf completed = null;
+        for (ByteBuf wire : this.wirePackets) {
+            //duplicates share the memory and reference count, but keep their own reader index
+            FriendlyByteBuf buffer = new FriendlyByteBuf(wire.duplicate());
+            int communicationId = buffer.readVarInt();
+            int packetIndex = buffer.readVarInt();
+            int packetCount = buffer.readVarInt();
+            completed = this.splitter.reassemble(this.connection, communicationId, packetIndex, packetCount,
+                    buffer.readRetainedSlice(buffer.readVarInt()));
+        }
+        long checksum = completed.readableBytes() + completed.getLong(completed.readableBytes() - Long.BYTES);
+        completed.release();
+        return checksum;
+    }
+}
@@ -22,14 +22,39 @@
 
 package com.klikli_dev.occultism.api.client.gui;
 
+import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
 import com.klikli_dev.occultism.api.common.data.MachineReference;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntList;
 import net.minecraft.world.item.ItemStack;
 
 import java.util.List;
 
 public interface IStorageControllerGui {
     //region Getter / Setter
-    void setStacks(List<ItemStack> stacks);
+    /**
+     * Replaces all stacks with the given snapshot.
+     *
+     * @param stacks the stacks, keyed by their stable id.
+     */
+    void setStacks(Int2ObjectMap<ItemStack> stacks);
+
+    /**
+     * @return the sequence number of the last applied stack update, or -1 if no snapshot has been received yet.
+     */
+    int getStacksSequence();
+
+    void setStacksSequence(int sequence);
+
+    /**
+     * Shows the given page in server side search mode. The first page received switches the gui to that mode.
+     *
+     * @param totalCount the number of stacks matching the search.
+     * @param offset     the index of the first stack of the page.
+     * @param stacks     the stacks of the page.
+     */
+    void setStackPage(int totalCount, int offset, List<ItemStack> stacks);
 
     void setUsedSlots(int slots);
 
@@ -39,4 +64,21 @@ public interface IStorageControllerGui {
 
     void setLinkedMachines(List<MachineReference> machines);
     //endregion Getter / Setter
+
+    /**
+     * Applies changes to the current stacks in place.
+     *
+     * @param addedStacks   stacks that are new, keyed by their stable id.
+     * @param changedCounts the new counts of existing stacks, keyed by their stable id.
+     * @param removedIds    the ids of stacks that are no longer present.
+     */
+    void updateStacks(Int2ObjectMap<ItemStack> addedStacks, Int2IntMap changedCounts, IntList removedIds);
+
+    /**
+     * Applies changes to the current linked machines in place.
+     *
+     * @param changedMachines machines that were linked or changed since the last update.
+     * @param removedMachines the insert positions of machines that are no longer linked.
+     */
+    void updateLinkedMachines(List<MachineReference> changedMachines, List<GlobalBlockPos> removedMachines);
 }
@@ -25,31 +25,52 @@ package com.klikli_dev.occultism.api.common.blockentity;
 import com.klikli_dev.occultism.api.common.container.IItemStackComparator;
 import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
 import com.klikli_dev.occultism.api.common.data.MachineReference;
+import com.klikli_dev.occultism.common.misc.DepositOrder;
+import com.klikli_dev.occultism.common.misc.StorageControllerItemIndex;
+import com.klikli_dev.occultism.common.misc.StorageControllerMetrics;
+import com.klikli_dev.occultism.common.misc.StorageControllerStackView;
 import com.klikli_dev.occultism.network.MessageUpdateStacks;
 import net.minecraft.world.item.ItemStack;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 public interface IStorageController {
     //region Getter / Setter
 
     /**
-     * Gets a list of all stacks in the storage controller. Use sparingly! This list can be large and thus cause a lot
-     * of network traffic as well as performance issues in collecting it.
+     * Gets a list of all stacks in the storage controller, merged so there is one stack per item and nbt.
+     * The merged view is maintained incrementally, but the returned stacks are fresh copies, so this list can still be
+     * large and cause a lot of network traffic. Use sparingly!
      *
      * @return all stacks available in the storage controller.
      */
     List<ItemStack> getStacks();
 
     /**
-     * Gets a message to update stacks, re-uses cached messages whenever possible
+     * Gets a full snapshot message of the stacks. The snapshot may be older than the current contents, but is never
+     * older than the given version. Snapshots are built at most once per configured interval and compressed off-thread.
      *
-     * @return the stack update message.
+     * @param minVersion the minimum index version (see {@link #getStacksVersion()}) the snapshot has to be captured at.
+     * @return a future completing with the compressed message, or null if no snapshot can be built right now and the
+     * caller should try again on a later tick.
      */
-    MessageUpdateStacks getMessageUpdateStacks();
+    @Nullable
+    CompletableFuture<MessageUpdateStacks> requestMessageUpdateStacks(long minVersion);
+
+    /**
+     * @return a counter that is incremented with every change to the stacks.
+     */
+    long getStacksVersion();
+
+    /**
+     * @return the searchable view of the stacks, used to answer page requests in server side search mode.
+     */
+    StorageControllerStackView getStackView();
 
     /**
      * @return the max slots available in this storage controller.
@@ -62,7 +83,7 @@ public interface IStorageController {
     void setMaxSlots(int slots);
 
     /**
-     * @return the used up slots. Usually lazily updated when calling getStacks.
+     * @return the used up slots.
      */
     int getUsedSlots();
 
@@ -101,12 +122,31 @@ public interface IStorageController {
     void addDepositOrderSpirit(GlobalBlockPos linkedMachinePosition, UUID spiritId);
 
     /**
-     * Removes the given spirit uuid from the list of spirits to give orders to.
+     * Removes all spirits giving orders to and unlinks the machine at the given position.
      *
      * @param linkedMachinePosition the position of the machine to deposit in.
      */
     void removeDepositOrderSpirit(GlobalBlockPos linkedMachinePosition);
 
+    /**
+     * Removes the given spirit uuid from the list of spirits to give orders to.
+     * Unlinks the machine if no spirit is left to serve it.
+     *
+     * @param linkedMachinePosition the position of the machine to deposit in.
+     * @param spiritId              the uuid of the spirit
+     */
+    void removeDepositOrderSpirit(GlobalBlockPos linkedMachinePosition, UUID spiritId);
+
+    /**
+     * Takes the next trip of the pending orders for the given machine.
+     *
+     * @param linkedMachinePosition the position of the machine to deposit in.
+     * @param spiritId              the uuid of the spirit asking for work
+     * @return an order for at most one stack of items, or null if no order is pending.
+     */
+    @Nullable
+    DepositOrder pollDepositOrder(GlobalBlockPos linkedMachinePosition, UUID spiritId);
+
     /**
      * @param stack the stack to check.
      * @return true of the stack cannot be added to the controller.
@@ -131,6 +171,17 @@ public interface IStorageController {
      */
     ItemStack getOneOfMostCommonItem(Predicate<ItemStack> comparator, boolean simulate);
 
+    /**
+     * Gets up to the requested amount of the most common item in the storage controller fitting the comparator.
+     * All returned items share item and nbt, so the stack may be larger than its max stack size.
+     *
+     * @param comparator    the comparator to match against.
+     * @param requestedSize the max amount to get.
+     * @param simulate      true for simulation.
+     * @return the matching item stack.
+     */
+    ItemStack getMostCommonItem(Predicate<ItemStack> comparator, int requestedSize, boolean simulate);
+
     /**
      * Gets the matching itemstack from the controller.
      *
@@ -154,4 +205,27 @@ public interface IStorageController {
      */
     void onContentsChanged();
 
+    /**
+     * Removes slots that were emptied while the storage controller was oversized. Shifts slot indices, so this is only
+     * done periodically and when a player closes the storage gui.
+     */
+    void compactSlots();
+
+    /**
+     * @return the operation metrics of this storage controller.
+     */
+    StorageControllerMetrics getMetrics();
+
+    /**
+     * Registers a listener that is notified about every change to the stored stacks.
+     *
+     * @param listener the listener to add.
+     */
+    void addStacksListener(StorageControllerItemIndex.Listener listener);
+
+    /**
+     * @param listener the listener to remove.
+     */
+    void removeStacksListener(StorageControllerItemIndex.Listener listener);
+
 }
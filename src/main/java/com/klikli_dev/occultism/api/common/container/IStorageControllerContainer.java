@@ -24,6 +24,8 @@ package com.klikli_dev.occultism.api.common.container;
 
 import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
 import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import com.klikli_dev.occultism.api.common.data.SortDirection;
+import com.klikli_dev.occultism.api.common.data.SortType;
 import net.minecraft.world.SimpleContainer;
 import net.minecraft.world.inventory.CraftingContainer;
 
@@ -57,4 +59,32 @@ public interface IStorageControllerContainer {
      */
     void updateOrderSlot(boolean force);
 
+    /**
+     * Sends the changes to the storage controller contents to the client viewing this container.
+     * Does nothing on the client.
+     *
+     * @param fullSync true to send the full contents instead of only the changes.
+     */
+    void syncStacks(boolean fullSync);
+
+    /**
+     * Sends the changes to the linked machines of the storage controller to the client viewing this container.
+     * Does nothing on the client.
+     *
+     * @param fullSync true to send all linked machines instead of only the changes.
+     */
+    void syncLinkedMachines(boolean fullSync);
+
+    /**
+     * Sets the page of stacks the client wants to see in server side search mode and sends it.
+     * Does nothing on the client.
+     *
+     * @param query         the search text.
+     * @param sortType      the sort type.
+     * @param sortDirection the sort direction.
+     * @param offset        the index of the first stack of the page.
+     * @param count         the number of stacks in the page.
+     */
+    void requestStackPage(String query, SortType sortType, SortDirection sortDirection, int offset, int count);
+
 }
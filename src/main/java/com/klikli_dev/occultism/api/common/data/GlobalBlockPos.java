@@ -22,6 +22,7 @@
 
 package com.klikli_dev.occultism.api.common.data;
 
+import com.klikli_dev.occultism.network.CompactCodec;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.nbt.CompoundTag;
@@ -65,6 +66,12 @@ public class GlobalBlockPos implements INBTSerializable<CompoundTag> {
         globalBlockPos.decode(buf);
         return globalBlockPos;
     }
+
+    public static GlobalBlockPos from(CompactCodec.Reader reader) {
+        GlobalBlockPos globalBlockPos = new GlobalBlockPos();
+        globalBlockPos.decode(reader);
+        return globalBlockPos;
+    }
     //endregion Getter / Setter
 
     public static GlobalBlockPos from(BlockEntity blockEntity) {
@@ -139,4 +146,14 @@ public class GlobalBlockPos implements INBTSerializable<CompoundTag> {
         this.dimensionKey = ResourceKey.create(Registries.DIMENSION, buf.readResourceLocation());
     }
 
+    public void encode(CompactCodec.Writer writer) {
+        writer.getBuf().writeLong(this.pos.asLong());
+        writer.writeDimension(this.dimensionKey);
+    }
+
+    public void decode(CompactCodec.Reader reader) {
+        this.pos = BlockPos.of(reader.getBuf().readLong());
+        this.dimensionKey = reader.readDimension();
+    }
+
 }
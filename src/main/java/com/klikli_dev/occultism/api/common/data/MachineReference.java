@@ -22,6 +22,7 @@
 
 package com.klikli_dev.occultism.api.common.data;
 
+import com.klikli_dev.occultism.network.CompactCodec;
 import com.klikli_dev.occultism.util.BlockEntityUtil;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
@@ -36,7 +37,15 @@ import net.minecraftforge.common.util.INBTSerializable;
 import net.minecraftforge.registries.ForgeRegistries;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Objects;
+
 public class MachineReference implements INBTSerializable<CompoundTag> {
+    private static final int FLAG_EXTRACT_POS = 1;
+    private static final int FLAG_INSERT_POS = 1 << 1;
+    private static final int FLAG_EXTRACT_CHUNK_LOADED = 1 << 2;
+    private static final int FLAG_INSERT_CHUNK_LOADED = 1 << 3;
+    private static final int FLAG_CUSTOM_NAME = 1 << 4;
+
     //extract is a potentially separate output block entity
     public GlobalBlockPos extractGlobalPos;
     public ResourceLocation extractRegistryName;
@@ -101,6 +110,12 @@ public class MachineReference implements INBTSerializable<CompoundTag> {
         return reference;
     }
 
+    public static MachineReference from(CompactCodec.Reader reader) {
+        MachineReference reference = new MachineReference();
+        reference.decode(reader);
+        return reference;
+    }
+
     public Item getExtractItem() {
         if (this.cachedExtractItem == null)
             this.cachedExtractItem = ForgeRegistries.ITEMS.getValue(this.extractRegistryName);
@@ -125,6 +140,37 @@ public class MachineReference implements INBTSerializable<CompoundTag> {
         return this.cachedInsertItemStack;
     }
 
+    /**
+     * @return a copy of the serialized fields, changes to this reference do not affect the copy.
+     */
+    public MachineReference copy() {
+        MachineReference copy = new MachineReference(this.extractGlobalPos, this.extractRegistryName,
+                this.extractChunkLoaded, this.insertGlobalPos, this.insertRegistryName, this.insertChunkLoaded);
+        copy.extractFacing = this.extractFacing;
+        copy.insertFacing = this.insertFacing;
+        copy.customName = this.customName;
+        return copy;
+    }
+
+    /**
+     * Compares the serialized fields, so two references that encode the same are equal.
+     *
+     * @param other the reference to compare with.
+     * @return true if both references describe the same machine with the same settings.
+     */
+    public boolean isSameAs(MachineReference other) {
+        return this.extractChunkLoaded == other.extractChunkLoaded &&
+                this.insertChunkLoaded == other.insertChunkLoaded &&
+                this.extractFacing == other.extractFacing &&
+                this.insertFacing == other.insertFacing &&
+                Objects.equals(this.extractGlobalPos, other.extractGlobalPos) &&
+                Objects.equals(this.insertGlobalPos, other.insertGlobalPos) &&
+                Objects.equals(this.extractRegistryName, other.extractRegistryName) &&
+                Objects.equals(this.insertRegistryName, other.insertRegistryName) &&
+                Objects.equals(StringUtils.defaultIfBlank(this.customName, null),
+                        StringUtils.defaultIfBlank(other.customName, null));
+    }
+
     @Override
     public CompoundTag serializeNBT() {
         return this.write(new CompoundTag());
@@ -195,11 +241,60 @@ public class MachineReference implements INBTSerializable<CompoundTag> {
     }
 
     public void encode(FriendlyByteBuf buf) {
-        buf.writeNbt(this.write(new CompoundTag()));
+        this.encode(CompactCodec.writer(buf));
+    }
+
+    /**
+     * Writes the reference without nbt overhead: booleans and presence in a flag byte, facings in another byte,
+     * positions as long and registry names and dimensions via the dictionary of the writer.
+     */
+    public void encode(CompactCodec.Writer writer) {
+        FriendlyByteBuf buf = writer.getBuf();
+        int flags = 0;
+        if (this.extractGlobalPos != null)
+            flags |= FLAG_EXTRACT_POS;
+        if (this.insertGlobalPos != null)
+            flags |= FLAG_INSERT_POS;
+        if (this.extractChunkLoaded)
+            flags |= FLAG_EXTRACT_CHUNK_LOADED;
+        if (this.insertChunkLoaded)
+            flags |= FLAG_INSERT_CHUNK_LOADED;
+        if (!StringUtils.isBlank(this.customName))
+            flags |= FLAG_CUSTOM_NAME;
+        buf.writeByte(flags);
+        buf.writeByte(this.extractFacing.get3DDataValue() | this.insertFacing.get3DDataValue() << 3);
+
+        if (this.extractGlobalPos != null)
+            this.extractGlobalPos.encode(writer);
+        writer.writeLocation(this.extractRegistryName);
+        if (this.insertGlobalPos != null)
+            this.insertGlobalPos.encode(writer);
+        writer.writeLocation(this.insertRegistryName);
+        if (!StringUtils.isBlank(this.customName))
+            buf.writeUtf(this.customName);
     }
 
     public void decode(FriendlyByteBuf buf) {
-        this.deserializeNBT(buf.readNbt());
+        this.decode(CompactCodec.reader(buf));
+    }
+
+    public void decode(CompactCodec.Reader reader) {
+        FriendlyByteBuf buf = reader.getBuf();
+        int flags = buf.readByte();
+        int facings = buf.readByte();
+        this.extractChunkLoaded = (flags & FLAG_EXTRACT_CHUNK_LOADED) != 0;
+        this.insertChunkLoaded = (flags & FLAG_INSERT_CHUNK_LOADED) != 0;
+        this.extractFacing = Direction.from3DDataValue(facings & 7);
+        this.insertFacing = Direction.from3DDataValue(facings >> 3 & 7);
+
+        if ((flags & FLAG_EXTRACT_POS) != 0)
+            this.extractGlobalPos = GlobalBlockPos.from(reader);
+        this.extractRegistryName = reader.readLocation();
+        if ((flags & FLAG_INSERT_POS) != 0)
+            this.insertGlobalPos = GlobalBlockPos.from(reader);
+        this.insertRegistryName = reader.readLocation();
+        if ((flags & FLAG_CUSTOM_NAME) != 0)
+            this.customName = buf.readUtf();
     }
 
     public BlockEntity getExtractBlockEntity(Level level) {
@@ -22,7 +22,6 @@
 
 package com.klikli_dev.occultism.client.gui.storage;
 
-import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.klikli_dev.occultism.Occultism;
 import com.klikli_dev.occultism.OccultismConstants;
@@ -35,6 +34,7 @@ import com.klikli_dev.occultism.client.gui.controls.LabelWidget;
 import com.klikli_dev.occultism.client.gui.controls.MachineSlotWidget;
 import com.klikli_dev.occultism.client.gui.controls.SizedImageButton;
 import com.klikli_dev.occultism.common.container.storage.StorageControllerContainerBase;
+import com.klikli_dev.occultism.common.misc.ItemSearchKeys;
 import com.klikli_dev.occultism.integration.jei.JeiAccess;
 import com.klikli_dev.occultism.integration.jei.JeiSettings;
 import com.klikli_dev.occultism.network.*;
@@ -42,6 +42,11 @@ import com.klikli_dev.occultism.util.InputUtil;
 import com.klikli_dev.occultism.util.TextUtil;
 import com.mojang.blaze3d.platform.InputConstants;
 import com.mojang.blaze3d.systems.RenderSystem;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import net.minecraft.ChatFormatting;
 import net.minecraft.client.gui.Font;
 import net.minecraft.client.gui.GuiGraphics;
@@ -59,16 +64,13 @@ import net.minecraft.world.Container;
 import net.minecraft.world.ContainerListener;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.item.ItemStack;
-import net.minecraft.world.item.TooltipFlag;
 import net.minecraft.world.level.Level;
 import net.minecraftforge.client.event.ScreenEvent;
 import net.minecraftforge.eventbus.api.Event;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
 
 public abstract class StorageControllerGuiBase<T extends StorageControllerContainerBase> extends AbstractContainerScreen<T> implements IStorageControllerGui, IStorageControllerGuiContainer, ContainerListener {
 
@@ -79,6 +81,8 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     protected static final String TRANSLATION_KEY_BASE = "gui." + Occultism.MODID + ".storage_controller";
     public int lastStacksCount;
     public List<ItemStack> stacks;
+    public Int2ObjectMap<ItemStack> stacksById;
+    public int stacksSequence;
     public List<MachineReference> linkedMachines;
     public IStorageControllerContainer storageControllerContainer;
     public int usedSlots;
@@ -111,6 +115,17 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     private List<ItemStack> cachedStacksToDisplay;
     private String cachedSearchString;
 
+    protected boolean serverSideSearch;
+    protected int pageTotalCount;
+    protected int pageOffset;
+    protected List<ItemStack> pageStacks = new ArrayList<>();
+    protected String lastPageRequest;
+
+    /**
+     * Search and sort keys per stack instance. Stacks keep their instance while only their count changes.
+     */
+    protected Map<ItemStack, ItemSearchKeys> searchKeys = new Reference2ObjectOpenHashMap<>();
+
     public StorageControllerGuiBase(T container, Inventory playerInventory, Component name) {
         super(container, playerInventory, name);
         this.storageControllerContainer = container;
@@ -127,6 +142,8 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         this.totalPages = 1;
 
         this.stacks = new ArrayList<>();
+        this.stacksById = new Int2ObjectLinkedOpenHashMap<>();
+        this.stacksSequence = -1;
         this.linkedMachines = new ArrayList<>();
 
         this.lastClick = System.currentTimeMillis();
@@ -192,8 +209,61 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     }
 
     @Override
-    public void setStacks(List<ItemStack> stacks) {
-        this.stacks = stacks;
+    public void setStacks(Int2ObjectMap<ItemStack> stacks) {
+        this.stacksById = stacks;
+        this.stacks = new ArrayList<>(stacks.values());
+        this.searchKeys.clear();
+        this.resetDisplayCaches();
+    }
+
+    @Override
+    public int getStacksSequence() {
+        return this.stacksSequence;
+    }
+
+    @Override
+    public void setStacksSequence(int sequence) {
+        this.stacksSequence = sequence;
+    }
+
+    @Override
+    public void setStackPage(int totalCount, int offset, List<ItemStack> stacks) {
+        this.serverSideSearch = true;
+        this.pageTotalCount = totalCount;
+        this.pageOffset = offset;
+        this.pageStacks = stacks;
+        this.resetDisplayCaches();
+    }
+
+    @Override
+    public void updateStacks(Int2ObjectMap<ItemStack> addedStacks, Int2IntMap changedCounts, IntList removedIds) {
+        if (!removedIds.isEmpty()) {
+            Set<ItemStack> removedStacks = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < removedIds.size(); i++) {
+                ItemStack removed = this.stacksById.remove(removedIds.getInt(i));
+                if (removed != null) {
+                    removedStacks.add(removed);
+                    this.searchKeys.remove(removed);
+                }
+            }
+            this.stacks.removeIf(removedStacks::contains);
+        }
+
+        for (Int2IntMap.Entry entry : changedCounts.int2IntEntrySet()) {
+            ItemStack stack = this.stacksById.get(entry.getIntKey());
+            if (stack != null)
+                stack.setCount(entry.getIntValue());
+        }
+
+        for (Int2ObjectMap.Entry<ItemStack> entry : addedStacks.int2ObjectEntrySet()) {
+            ItemStack previous = this.stacksById.put(entry.getIntKey(), entry.getValue());
+            if (previous != null) {
+                this.stacks.remove(previous);
+                this.searchKeys.remove(previous);
+            }
+            this.stacks.add(entry.getValue());
+        }
+
         this.resetDisplayCaches();
     }
 
@@ -217,6 +287,16 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         this.linkedMachines = machines;
     }
 
+    @Override
+    public void updateLinkedMachines(List<MachineReference> changedMachines, List<GlobalBlockPos> removedMachines) {
+        Set<GlobalBlockPos> replaced = new HashSet<>(removedMachines);
+        for (MachineReference machine : changedMachines) {
+            replaced.add(machine.insertGlobalPos);
+        }
+        this.linkedMachines.removeIf(machine -> replaced.contains(machine.insertGlobalPos));
+        this.linkedMachines.addAll(changedMachines);
+    }
+
     @Override
     public void init() {
         super.init();
@@ -433,7 +513,6 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     @Override
     public boolean charTyped(char typedChar, int keyCode) {
         if (this.searchBar.isFocused() && this.searchBar.charTyped(typedChar, keyCode)) {
-            OccultismPackets.sendToServer(new MessageRequestStacks());
             if (JeiSettings.isJeiLoaded() && JeiSettings.isJeiSearchSynced()) {
                 JeiAccess.setFilterText(this.searchBar.getValue());
             }
@@ -451,7 +530,6 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
                 this.topPos + clearRecipeButtonTop, controlButtonSize, controlButtonSize, 0, 196, 28, 28, 28, 256, 256,
                 BUTTONS, (button) -> {
             OccultismPackets.sendToServer(new MessageClearCraftingMatrix());
-            OccultismPackets.sendToServer(new MessageRequestStacks());
             this.init();
         });
         this.addRenderableWidget(this.clearRecipeButton);
@@ -551,6 +629,11 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     }
 
     protected void drawItems(GuiGraphics guiGraphics, float partialTicks, int mouseX, int mouseY) {
+        if (this.serverSideSearch) {
+            this.drawPagedItems(guiGraphics, mouseX, mouseY);
+            return;
+        }
+
         List<ItemStack> stacksToDisplay = this.applySearchToItems();
 
         var changedPage = this.previousPage != this.currentPage;
@@ -571,6 +654,58 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         this.drawItemSlots(guiGraphics, mouseX, mouseY);
     }
 
+    /**
+     * Draws the items in server side search mode, where the server searches and sorts and only sends the visible page.
+     */
+    protected void drawPagedItems(GuiGraphics guiGraphics, int mouseX, int mouseY) {
+        this.buildPage(this.pageTotalCount);
+        this.requestStackPage();
+
+        if (this.previousPage != this.currentPage) {
+            this.previousPage = this.currentPage;
+            this.buildPagedItemSlots();
+        }
+
+        this.drawItemSlots(guiGraphics, mouseX, mouseY);
+    }
+
+    /**
+     * Requests the currently visible page from the server, if search, sort or page changed since the last request.
+     */
+    protected void requestStackPage() {
+        String searchText = this.searchBar.getValue();
+        int offset = (this.currentPage - 1) * this.columns;
+        int count = this.rows * this.columns;
+
+        //one string to compare all request parameters at once
+        String request = searchText + '\n' + this.getSortType() + '\n' + this.getSortDirection() + '\n' + offset + '\n' + count;
+        if (request.equals(this.lastPageRequest))
+            return;
+        this.lastPageRequest = request;
+        OccultismPackets.sendToServer(new MessageRequestStackPage(searchText, this.getSortType(), this.getSortDirection(), offset, count));
+    }
+
+    protected void buildPagedItemSlots() {
+        int itemAreaLeft = 8 + ORDER_AREA_OFFSET;
+        int itemAreaTop = 24;
+
+        this.itemSlots = new ArrayList<>();
+        int index = (this.currentPage - 1) * (this.columns);
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < this.columns; col++) {
+                //while the requested page is on its way we may not have all stacks yet
+                int pageIndex = index++ - this.pageOffset;
+                if (pageIndex < 0 || pageIndex >= this.pageStacks.size())
+                    continue;
+                ItemStack stack = this.pageStacks.get(pageIndex);
+                this.itemSlots.add(new ItemSlotWidget(this, stack,
+                        this.leftPos + itemAreaLeft + col * 18,
+                        this.topPos + itemAreaTop + row * 18, stack.getCount(),
+                        this.leftPos, this.topPos, true));
+            }
+        }
+    }
+
     protected void drawMachines(GuiGraphics guiGraphics, float partialTicks, int mouseX, int mouseY) {
         List<MachineReference> machinesToDisplay = this.applySearchToMachines();
         this.sortMachines(machinesToDisplay);
@@ -712,8 +847,12 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     }
 
     protected void buildPage(List<?> objectsToDisplay) {
-        this.totalPages = objectsToDisplay.size() / this.columns;
-        if (objectsToDisplay.size() % this.columns != 0) {
+        this.buildPage(objectsToDisplay.size());
+    }
+
+    protected void buildPage(int objectsToDisplayCount) {
+        this.totalPages = objectsToDisplayCount / this.columns;
+        if (objectsToDisplayCount % this.columns != 0) {
             this.totalPages++;
         }
         this.totalPages -= (this.rows - 1);
@@ -732,19 +871,20 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         stacksToDisplay.sort(new Comparator<ItemStack>() {
 
             final int direction = StorageControllerGuiBase.this.getSortDirection().isDown() ? -1 : 1;
+            final SortType sortType = StorageControllerGuiBase.this.getSortType();
 
             @Override
             public int compare(ItemStack a, ItemStack b) {
-                switch (StorageControllerGuiBase.this.getSortType()) {
+                switch (this.sortType) {
                     case AMOUNT:
                         return Integer.compare(b.getCount(), a.getCount()) * this.direction;
                     case NAME:
-                        return a.getDisplayName().getString()
-                                .compareToIgnoreCase(b.getDisplayName().getString()) *
+                        return StorageControllerGuiBase.this.getSearchKeys(a).getName()
+                                .compareToIgnoreCase(StorageControllerGuiBase.this.getSearchKeys(b).getName()) *
                                 this.direction;
                     case MOD:
-                        return TextUtil.getModNameForGameObject(a.getItem())
-                                .compareToIgnoreCase(TextUtil.getModNameForGameObject(b.getItem())) *
+                        return StorageControllerGuiBase.this.getSearchKeys(a).getModName()
+                                .compareToIgnoreCase(StorageControllerGuiBase.this.getSearchKeys(b).getModName()) *
                                 this.direction;
                 }
                 return 0;
@@ -753,6 +893,10 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         });
     }
 
+    protected ItemSearchKeys getSearchKeys(ItemStack stack) {
+        return this.searchKeys.computeIfAbsent(stack, ItemSearchKeys::new);
+    }
+
     protected void resetDisplayCaches(){
         this.lastStacksCount = 0;
         this.cachedStacksToDisplay = null;
@@ -766,8 +910,14 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
             if (this.cachedStacksToDisplay != null && this.cachedSearchString != null && this.cachedSearchString.equals(searchText))
                 return this.cachedStacksToDisplay;
 
+            //if the search text only grew, the matches are a subset of the previous matches
+            List<ItemStack> candidates = this.stacks;
+            if (this.cachedStacksToDisplay != null && this.cachedSearchString != null &&
+                    !this.cachedSearchString.isEmpty() && searchText.startsWith(this.cachedSearchString))
+                candidates = this.cachedStacksToDisplay;
+
             List<ItemStack> stacksToDisplay = new ArrayList<>();
-            for (ItemStack stack : this.stacks) {
+            for (ItemStack stack : candidates) {
                 if (this.itemMatchesSearch(stack))
                     stacksToDisplay.add(stack);
             }
@@ -796,27 +946,7 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     }
 
     protected boolean itemMatchesSearch(ItemStack stack) {
-        String searchText = this.searchBar.getValue();
-        if (searchText.startsWith("@")) {
-            String name = TextUtil.getModNameForGameObject(stack.getItem());
-            return name.toLowerCase().contains(searchText.toLowerCase().substring(1));
-        } else if (searchText.startsWith("#")) {
-            List<String> tooltip = stack.getTooltipLines(this.minecraft.player, TooltipFlag.Default.NORMAL).stream()
-                    .map(Component::getString).collect(
-                            Collectors.toList());
-            String tooltipString = Joiner.on(' ').join(tooltip).toLowerCase().trim();
-            return tooltipString.toLowerCase().contains(searchText.toLowerCase().substring(1));
-        } else if (searchText.startsWith("$")) {
-            StringBuilder tagStringBuilder = new StringBuilder();
-            stack.getTags().forEach(
-                    tag -> tagStringBuilder.append(tag.location()).append(" ")
-            );
-            return tagStringBuilder.toString().toLowerCase().contains(searchText.toLowerCase().substring(1));
-        } else {
-            //Note: If search stops working, forge may have re-implemented .getUnformattedComponentText() for translated text components
-            return stack.getDisplayName().getString().toLowerCase()
-                    .contains(searchText.toLowerCase());
-        }
+        return this.getSearchKeys(stack).matches(this.searchBar.getValue().toLowerCase(), this.minecraft.player);
     }
 
     protected boolean machineMatchesSearch(MachineReference machine) {
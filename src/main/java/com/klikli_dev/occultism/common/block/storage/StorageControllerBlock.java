@@ -86,6 +86,15 @@ public class StorageControllerBlock extends Block implements EntityBlock {
         return InteractionResult.SUCCESS;
     }
 
+    @Override
+    public void playerWillDestroy(Level level, BlockPos pos, BlockState state, Player player) {
+        //creative mode does not drop the block, so nothing will reference the stored items anymore
+        if (!level.isClientSide && player.isCreative() &&
+                level.getBlockEntity(pos) instanceof StorageControllerBlockEntity controller)
+            controller.discardMatrixOnRemoval();
+        super.playerWillDestroy(level, pos, state, player);
+    }
+
     @Override
     @SuppressWarnings("deprecation")
     public VoxelShape getShape(BlockState state, BlockGetter worldIn, BlockPos pos, CollisionContext context) {
@@ -28,7 +28,11 @@ import com.klikli_dev.modonomicon.api.multiblock.Multiblock.SimulateResult;
 import com.klikli_dev.occultism.Occultism;
 import com.klikli_dev.occultism.common.item.DummyTooltipItem;
 import com.klikli_dev.occultism.common.item.spirit.BookOfBindingItem;
+import com.klikli_dev.occultism.common.ritual.AdditionalIngredientMatcher;
 import com.klikli_dev.occultism.common.ritual.Ritual;
+import com.klikli_dev.occultism.common.ritual.RitualEventDispatcher;
+import com.klikli_dev.occultism.common.ritual.RitualFootprintTracker;
+import com.klikli_dev.occultism.crafting.RitualRecipeIndex;
 import com.klikli_dev.occultism.crafting.recipe.RitualRecipe;
 import com.klikli_dev.occultism.exceptions.ItemHandlerMissingException;
 import com.klikli_dev.occultism.registry.OccultismParticles;
@@ -60,13 +64,12 @@ import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Rotation;
 import net.minecraft.world.level.block.state.BlockState;
-import net.minecraftforge.common.MinecraftForge;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.common.capabilities.ForgeCapabilities;
 import net.minecraftforge.common.util.LazyOptional;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
-import net.minecraftforge.event.entity.player.PlayerInteractEvent.RightClickItem;
 import net.minecraftforge.items.IItemHandler;
 import net.minecraftforge.items.ItemStackHandler;
 import org.jetbrains.annotations.NotNull;
@@ -75,10 +78,18 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.function.Consumer;
 
 public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity {
 
+    /**
+     * How often a running ritual is fully re-validated even if no change was reported in its footprint.
+     */
+    public static final int RITUAL_RECHECK_INTERVAL_TICKS = 100;
+    /**
+     * How long pentacle validation results are reused when identifying rituals, see {@link #identifyRitual(ItemStack)}.
+     */
+    public static final int PENTACLE_MEMO_TICKS = 20;
+
     public RitualRecipe currentRitualRecipe;
     public ResourceLocation currentRitualRecipeId;
     public UUID castingPlayerId;
@@ -89,16 +100,28 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
     public boolean itemUseProvided;
     public int currentTime;
 
-    public Consumer<RightClickItem> rightClickItemListener;
-    public Consumer<LivingDeathEvent> livingDeathEventListener;
+    /**
+     * The area the running ritual depends on, null while it is not watched by the {@link RitualFootprintTracker}.
+     */
+    protected BoundingBox ritualFootprint;
+    /**
+     * False if the running ritual needs to be re-validated on the next tick.
+     */
+    protected boolean ritualValidated;
+    /**
+     * The sacrificial bowls in range of the running ritual, null if they need to be looked up again.
+     */
+    protected List<SacrificialBowlBlockEntity> sacrificialBowls;
+    /**
+     * Recent pentacle validation results at this bowl by pentacle id, used by {@link #identifyRitual(ItemStack)}.
+     */
+    protected final Map<ResourceLocation, Boolean> pentacleMemo = new HashMap<>();
+    protected long pentacleMemoTime;
 
 
     public GoldenSacrificialBowlBlockEntity(BlockPos worldPos, BlockState state) {
         super(OccultismTiles.GOLDEN_SACRIFICIAL_BOWL.get(), worldPos, state);
 
-        this.rightClickItemListener = this::onPlayerRightClickItem;
-        this.livingDeathEventListener = this::onLivingDeath;
-
         this.itemStackHandler = new ItemStackHandler(1) {
 
             private ItemStack handleDummyInsert(int slot, @NotNull ItemStack stack, boolean simulate){
@@ -122,9 +145,7 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
                 if (GoldenSacrificialBowlBlockEntity.this.getCurrentRitualRecipe() != null)
                     return stack;
 
-                var ritualRecipe = GoldenSacrificialBowlBlockEntity.this.level.getRecipeManager().getAllRecipesFor(OccultismRecipes.RITUAL_TYPE.get()).stream().filter(
-                        r -> r.matches(GoldenSacrificialBowlBlockEntity.this.level, GoldenSacrificialBowlBlockEntity.this.getBlockPos(), stack)
-                ).findFirst().orElse(null);
+                var ritualRecipe = GoldenSacrificialBowlBlockEntity.this.identifyRitual(stack);
 
                 if (ritualRecipe == null)
                     return stack;
@@ -152,6 +173,7 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
                 if (!GoldenSacrificialBowlBlockEntity.this.level.isClientSide) {
                     GoldenSacrificialBowlBlockEntity.this.lastChangeTime = GoldenSacrificialBowlBlockEntity.this.level
                             .getGameTime();
+                    GoldenSacrificialBowlBlockEntity.this.invalidateRitual();
                     GoldenSacrificialBowlBlockEntity.this.markNetworkDirty();
                 }
             }
@@ -210,6 +232,7 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
         List<Ingredient> ritualDiff = null;
         List<Ingredient> bestRitualDiff = null;
         RitualRecipe bestRitual = null;
+        List<ItemStack> bowlItems = null;
 
         var pentacleMultiblocks = level.getRecipeManager().getAllRecipesFor(OccultismRecipes.RITUAL_TYPE.get())
                 .stream().map(RitualRecipe::getPentacleId).distinct().map(ModonomiconAPI.get()::getMultiblock);
@@ -224,22 +247,10 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
             if (recipe.getPentacle() != pentacle.orElseThrow())
                 continue;
 
-            ritualDiff = new ArrayList<>(recipe.getIngredients());
-            List<ItemStack> items = recipe.getRitual().getItemsOnSacrificialBowls(level, pos);
-
-            boolean found = false;
-            for (int i = ritualDiff.size() - 1; i >= 0; i--) {
-                found = false;
-                for (int j = 0; j < items.size(); j++) {
-                    if (ritualDiff.get(i).test(items.get(j))) {
-                        items.remove(j);
-                        found = true;
-                        break;
-                    }
-                }
-                if (found)
-                    ritualDiff.remove(i);
-            }
+            //all candidates share the pentacle, so they see the same bowls
+            if (bowlItems == null)
+                bowlItems = recipe.getRitual().getItemsOnSacrificialBowls(level, pos);
+            ritualDiff = AdditionalIngredientMatcher.getUnmatched(recipe.getIngredients(), bowlItems);
 
             if (bestRitualDiff == null || bestRitualDiff.size() > ritualDiff.size()) {
                 bestRitualDiff = ritualDiff;
@@ -303,8 +314,8 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
                 Optional<? extends Recipe<?>> recipe = this.level.getRecipeManager().byKey(this.currentRitualRecipeId);
                 recipe.map(r -> (RitualRecipe) r).ifPresent(r -> this.currentRitualRecipe = r);
 
-                MinecraftForge.EVENT_BUS.addListener(this.rightClickItemListener);
-                MinecraftForge.EVENT_BUS.addListener(this.livingDeathEventListener);
+                if (this.currentRitualRecipe != null)
+                    RitualEventDispatcher.register(this);
 
                 this.currentRitualRecipeId = null;
             }
@@ -340,12 +351,22 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
                 }
             }
 
+            if (this.ritualFootprint == null) {
+                //started, or restored from nbt: validate now and from then on when something changes in the footprint
+                this.ritualFootprint = recipe.getRitual().getFootprint(this.getBlockPos());
+                this.ritualValidated = false;
+                RitualFootprintTracker.watch(this);
+            }
+
             IItemHandler handler = this.lazyItemStackHandler.orElseThrow(ItemHandlerMissingException::new);
-            if (!recipe.getRitual().isValid(this.level, this.getBlockPos(), this, this.castingPlayer,
-                    handler.getStackInSlot(0), this.remainingAdditionalIngredients)) {
-                //ritual is no longer valid, so interrupt
-                this.stopRitual(false);
-                return;
+            if (!this.ritualValidated || this.level.getGameTime() % RITUAL_RECHECK_INTERVAL_TICKS == 0) {
+                if (!recipe.getRitual().isValid(this.level, this.getBlockPos(), this, this.castingPlayer,
+                        handler.getStackInSlot(0), this.remainingAdditionalIngredients)) {
+                    //ritual is no longer valid, so interrupt
+                    this.stopRitual(false);
+                    return;
+                }
+                this.ritualValidated = true;
             }
 
             //if we do not have a sacrifice yet, we cannot advance time
@@ -404,6 +425,69 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
         }
     }
 
+    public BoundingBox getRitualFootprint() {
+        return this.ritualFootprint;
+    }
+
+    /**
+     * @return the sacrificial bowls in range of the running ritual, looked up once and then kept until a sacrificial
+     * bowl is added or removed in range.
+     */
+    public List<SacrificialBowlBlockEntity> getSacrificialBowls() {
+        if (this.sacrificialBowls == null)
+            this.sacrificialBowls = this.getCurrentRitualRecipe().getRitual().findSacrificialBowls(this.level, this.getBlockPos());
+        return this.sacrificialBowls;
+    }
+
+    /**
+     * Identifies the ritual started by the given activation item inserted into this bowl.
+     * Hoppers try to insert repeatedly, simulated and for real, so pentacle results are reused for
+     * {@link #PENTACLE_MEMO_TICKS}. A ritual started on an outdated result is fully validated on its first tick.
+     * Activation by a player does not use the memo.
+     *
+     * @param activationItem the item used to start the ritual.
+     * @return the identified ritual, or null if none matches.
+     */
+    @Nullable
+    public RitualRecipe identifyRitual(ItemStack activationItem) {
+        long time = this.level.getGameTime();
+        if (time - this.pentacleMemoTime >= PENTACLE_MEMO_TICKS || time < this.pentacleMemoTime) {
+            this.pentacleMemo.clear();
+            this.pentacleMemoTime = time;
+        }
+        return RitualRecipeIndex.identify(this.level, this.getBlockPos(), activationItem, this.pentacleMemo);
+    }
+
+    /**
+     * Re-validates the running ritual on the next tick, called when something changed in its footprint.
+     */
+    public void invalidateRitual() {
+        this.ritualValidated = false;
+    }
+
+    /**
+     * Looks up the sacrificial bowls again on next access, called when one was added or removed in range.
+     */
+    public void invalidateSacrificialBowls() {
+        this.sacrificialBowls = null;
+        this.ritualValidated = false;
+    }
+
+    protected void unwatchRitual() {
+        if (this.ritualFootprint != null) {
+            RitualFootprintTracker.unwatch(this);
+            this.ritualFootprint = null;
+        }
+        this.sacrificialBowls = null;
+    }
+
+    @Override
+    public void setRemoved() {
+        super.setRemoved();
+        this.unwatchRitual();
+        RitualEventDispatcher.unregister(this);
+    }
+
     public void restoreCastingPlayer() {
         //every 30 seconds try to restore the casting player
         if (this.castingPlayer == null && this.castingPlayerId != null &&
@@ -432,9 +516,8 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
             if (this.getCurrentRitualRecipe() == null) {
                 //Identify the ritual in the ritual registry.
 
-                RitualRecipe ritualRecipe = this.level.getRecipeManager().getAllRecipesFor(OccultismRecipes.RITUAL_TYPE.get()).stream().filter(
-                        r -> r.matches(level, pos, activationItem)
-                ).findFirst().orElse(null);
+                //no pentacle memo, the player may just have completed the pentacle after a failed attempt
+                RitualRecipe ritualRecipe = RitualRecipeIndex.identify(level, pos, activationItem, new HashMap<>());
 
                 if (ritualRecipe != null) {
                     if (ritualRecipe.getRitual().isValid(level, pos, this, serverPlayer, activationItem,
@@ -472,6 +555,7 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
 
     public void startRitual(@Nullable ServerPlayer player, ItemStack activationItem, RitualRecipe ritualRecipe) {
         if (!this.level.isClientSide) {
+            this.unwatchRitual();
             this.currentRitualRecipe = ritualRecipe;
             this.castingPlayerId = player == null? null : player.getUUID();
             this.castingPlayer = player;
@@ -482,8 +566,7 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
             this.remainingAdditionalIngredients = new ArrayList<>(this.currentRitualRecipe.getIngredients());
             this.currentRitualRecipe.getRitual().start(this.level, this.getBlockPos(), this, player, this.itemStackHandler.getStackInSlot(0));
 
-            MinecraftForge.EVENT_BUS.addListener(this.rightClickItemListener);
-            MinecraftForge.EVENT_BUS.addListener(this.livingDeathEventListener);
+            RitualEventDispatcher.register(this);
 
             this.setChanged();
             this.markNetworkDirty();
@@ -508,6 +591,7 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
                             handler.extractItem(0, 1, false));
                 }
             }
+            this.unwatchRitual();
             this.currentRitualRecipe = null;
             this.castingPlayerId = null;
             this.castingPlayer = null;
@@ -518,8 +602,7 @@ public class GoldenSacrificialBowlBlockEntity extends SacrificialBowlBlockEntity
                 this.remainingAdditionalIngredients.clear();
             this.consumedIngredients.clear();
 
-            MinecraftForge.EVENT_BUS.unregister(this.rightClickItemListener);
-            MinecraftForge.EVENT_BUS.unregister(this.livingDeathEventListener);
+            RitualEventDispatcher.unregister(this);
 
             this.setChanged();
             this.markNetworkDirty();
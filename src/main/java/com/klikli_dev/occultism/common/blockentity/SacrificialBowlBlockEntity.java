@@ -22,6 +22,7 @@
 
 package com.klikli_dev.occultism.common.blockentity;
 
+import com.klikli_dev.occultism.common.ritual.RitualFootprintTracker;
 import com.klikli_dev.occultism.registry.OccultismTiles;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -54,6 +55,9 @@ public class SacrificialBowlBlockEntity extends NetworkedBlockEntity {
                         .getGameTime();
                 SacrificialBowlBlockEntity.this.setChanged();
                 SacrificialBowlBlockEntity.this.markNetworkDirty();
+                //rituals in range may depend on the contents
+                RitualFootprintTracker.onBlockChanged(SacrificialBowlBlockEntity.this.level,
+                        SacrificialBowlBlockEntity.this.getBlockPos());
             }
         }
 
@@ -71,6 +75,19 @@ public class SacrificialBowlBlockEntity extends NetworkedBlockEntity {
         super(BlockEntityTypeIn, worldPos, state);
     }
 
+    @Override
+    public void onLoad() {
+        super.onLoad();
+        //running rituals in range cache their sacrificial bowls
+        RitualFootprintTracker.onSacrificialBowlAddedOrRemoved(this.level, this.getBlockPos());
+    }
+
+    @Override
+    public void setRemoved() {
+        super.setRemoved();
+        RitualFootprintTracker.onSacrificialBowlAddedOrRemoved(this.level, this.getBlockPos());
+    }
+
     @Nonnull
     @Override
     public <T> LazyOptional<T> getCapability(@Nonnull Capability<T> cap, @Nullable Direction direction) {
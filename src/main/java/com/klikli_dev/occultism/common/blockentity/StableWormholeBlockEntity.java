@@ -30,6 +30,7 @@ import com.klikli_dev.occultism.api.common.data.SortDirection;
 import com.klikli_dev.occultism.api.common.data.SortType;
 import com.klikli_dev.occultism.common.block.storage.StableWormholeBlock;
 import com.klikli_dev.occultism.common.container.storage.StableWormholeContainer;
+import com.klikli_dev.occultism.common.misc.StorageControllerRegistry;
 import com.klikli_dev.occultism.registry.OccultismTiles;
 import com.klikli_dev.occultism.util.BlockEntityUtil;
 import net.minecraft.core.BlockPos;
@@ -112,6 +113,13 @@ public class StableWormholeBlockEntity extends NetworkedBlockEntity implements I
     @Override
     public IStorageController getLinkedStorageController() {
         if (this.linkedStorageControllerPosition != null) {
+            //fast path for loaded controllers, the lookup below is needed to tell unloaded from removed ones.
+            if (!this.level.isClientSide) {
+                IStorageController registered = StorageControllerRegistry.get(this.linkedStorageControllerPosition);
+                if (registered != null)
+                    return registered;
+            }
+
             if (!BlockEntityUtil.isLoaded(this.level, this.linkedStorageControllerPosition)) {
                 //if the target pos is not loaded we exit early to prevent accidentally clearing the linked storage controller position
                 return null;
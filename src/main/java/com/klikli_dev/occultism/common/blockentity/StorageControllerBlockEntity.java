@@ -34,17 +34,23 @@ import com.klikli_dev.occultism.api.common.data.SortDirection;
 import com.klikli_dev.occultism.api.common.data.SortType;
 import com.klikli_dev.occultism.common.block.storage.StorageStabilizerBlock;
 import com.klikli_dev.occultism.common.container.storage.StorageControllerContainer;
-import com.klikli_dev.occultism.common.entity.job.ManageMachineJob;
-import com.klikli_dev.occultism.common.entity.spirit.SpiritEntity;
 import com.klikli_dev.occultism.common.misc.DepositOrder;
+import com.klikli_dev.occultism.common.misc.DepositOrderScheduler;
 import com.klikli_dev.occultism.common.misc.ItemStackComparator;
+import com.klikli_dev.occultism.common.misc.ItemStackKey;
+import com.klikli_dev.occultism.common.misc.StorageControllerItemHandlerView;
+import com.klikli_dev.occultism.common.misc.StorageControllerItemIndex;
 import com.klikli_dev.occultism.common.misc.StorageControllerItemStackHandler;
+import com.klikli_dev.occultism.common.misc.StorageControllerMatrixData;
+import com.klikli_dev.occultism.common.misc.StorageControllerMetrics;
+import com.klikli_dev.occultism.common.misc.StorageControllerRegistry;
+import com.klikli_dev.occultism.common.misc.StorageControllerStackView;
 import com.klikli_dev.occultism.network.MessageUpdateStacks;
 import com.klikli_dev.occultism.registry.OccultismBlocks;
 import com.klikli_dev.occultism.registry.OccultismItems;
 import com.klikli_dev.occultism.registry.OccultismTiles;
-import com.klikli_dev.occultism.util.EntityUtil;
 import com.klikli_dev.occultism.util.Math3DUtil;
+import net.minecraft.Util;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
@@ -64,7 +70,7 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.common.capabilities.ForgeCapabilities;
 import net.minecraftforge.common.util.LazyOptional;
-import net.minecraftforge.items.ItemHandlerHelper;
+import net.minecraftforge.items.IItemHandler;
 import net.minecraftforge.items.ItemStackHandler;
 import net.minecraftforge.registries.ForgeRegistries;
 import net.minecraftforge.registries.RegistryObject;
@@ -80,6 +86,7 @@ import software.bernie.geckolib.util.GeckoLibUtil;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -87,6 +94,10 @@ import java.util.stream.Stream;
 public class StorageControllerBlockEntity extends NetworkedBlockEntity implements MenuProvider, IStorageController, IStorageAccessor, IStorageControllerProxy, GeoBlockEntity {
 
     public static final int MAX_STABILIZER_DISTANCE = 5;
+    /**
+     * How often slots emptied while oversized are removed, see {@link #compactSlots()}.
+     */
+    public static final int COMPACTION_INTERVAL_TICKS = 100;
 
     protected static final List<RegistryObject<? extends Block>> BLOCK_BLACKLIST = Stream.of(
             OccultismBlocks.STORAGE_CONTROLLER).collect(Collectors.toList());
@@ -94,20 +105,43 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
     public Map<Integer, ItemStack> matrix = new HashMap<>();
     public ItemStack orderStack = ItemStack.EMPTY;
     public Map<GlobalBlockPos, MachineReference> linkedMachines = new HashMap<>();
-    public Map<GlobalBlockPos, UUID> depositOrderSpirits = new HashMap<>();
     protected SortDirection sortDirection = SortDirection.DOWN;
     protected SortType sortType = SortType.AMOUNT;
-    protected ItemStackHandler itemStackHandlerInternal = new StorageControllerItemStackHandler(this,
+    protected StorageControllerItemStackHandler itemStackHandlerInternal = new StorageControllerItemStackHandler(this,
             Occultism.SERVER_CONFIG.storage.controllerBaseSlots.get(),
             Occultism.SERVER_CONFIG.storage.controllerStackSize.get(),
             Occultism.SERVER_CONFIG.storage.overrideItemStackSizes.get()
     );
     protected LazyOptional<ItemStackHandler> itemStackHandler = LazyOptional.of(() -> this.itemStackHandlerInternal);
+    protected StorageControllerItemHandlerView itemHandlerViewInternal;
+    protected LazyOptional<IItemHandler> itemHandlerView = LazyOptional.of(this::getItemHandlerView);
     protected int maxSlots = Occultism.SERVER_CONFIG.storage.controllerBaseSlots.get();
-    protected int usedSlots = 0;
     protected boolean stabilizersInitialized = false;
     protected GlobalBlockPos globalPos;
-    protected MessageUpdateStacks cachedMessageUpdateStacks;
+    protected CompletableFuture<MessageUpdateStacks> cachedMessageUpdateStacks;
+    protected long cachedMessageUpdateStacksVersion = -1;
+    protected long cachedMessageUpdateStacksTime;
+    protected StorageControllerStackView stackView;
+    /**
+     * Identifies the matrix holding the stored items, see {@link StorageControllerMatrixData}.
+     */
+    protected UUID matrixId;
+    protected StorageControllerMatrixData matrixData;
+    /**
+     * True if the items were read from the block entity nbt of an older version and still need to be moved into the
+     * matrix.
+     */
+    protected boolean migrateItemsToMatrix;
+    /**
+     * True if the block entity is removed because its chunk unloads, the block itself stays in the world.
+     */
+    protected boolean chunkUnloaded;
+    /**
+     * True if the matrix is deleted on removal, because the block is broken without dropping an item.
+     */
+    protected boolean discardMatrix;
+    protected final StorageControllerMetrics metrics = new StorageControllerMetrics(this);
+    protected final DepositOrderScheduler depositOrderScheduler = new DepositOrderScheduler(this.metrics);
 
     public StorageControllerBlockEntity(BlockPos worldPos, BlockState state) {
         super(OccultismTiles.STORAGE_CONTROLLER.get(), worldPos, state);
@@ -119,9 +153,17 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
                 this.stabilizersInitialized = true;
                 this.updateStabilizers();
             }
+            if (this.level.getGameTime() % COMPACTION_INTERVAL_TICKS == 0)
+                this.compactSlots();
         }
     }
 
+    @Override
+    public void compactSlots() {
+        if (this.itemStackHandlerInternal.isCompactionPending())
+            this.itemStackHandlerInternal.compact();
+    }
+
     public void updateStabilizers() {
         int additionalSlots = 0;
         List<BlockPos> stabilizerLocations = this.findValidStabilizers();
@@ -165,37 +207,40 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
         return 0;
     }
 
-    protected void mergeIntoList(List<ItemStack> list, ItemStack stackToAdd) {
-        boolean merged = false;
-        for (ItemStack stack : list) {
-            if (ItemHandlerHelper.canItemStacksStack(stackToAdd, stack)) {
-                stack.setCount(stack.getCount() + stackToAdd.getCount());
-                merged = true;
-                break;
-            }
-        }
-        if (!merged) {
-            list.add(stackToAdd);
-        }
-    }
-
     protected void validateLinkedMachines() {
         // remove all entries that lead to invalid block entities.
         this.linkedMachines.entrySet().removeIf(entry -> !entry.getValue().isValidFor(this.level));
     }
 
-    private List<Predicate<ItemStack>> getComparatorsSortedByAmount(Predicate<ItemStack> comparator) {
-        var handler = this.itemStackHandlerInternal;
-        var map = new HashMap<Item, Integer>();
-        for (int i = 0; i < handler.getSlots(); i++) {
-            var getStackInSlot = handler.getStackInSlot(i);
-            if (comparator.test(getStackInSlot)) {
-                var oldCount = map.getOrDefault(getStackInSlot.getItem(), 0);
-                map.put(getStackInSlot.getItem(), oldCount + getStackInSlot.getCount());
+    /**
+     * Gets the index entries that may match the given comparator.
+     * For item stack comparators only the entries of the filter item are considered, otherwise all entries.
+     */
+    protected Collection<StorageControllerItemIndex.Entry> getCandidateEntries(Predicate<ItemStack> comparator) {
+        StorageControllerItemIndex index = this.itemStackHandlerInternal.getIndex();
+        if (comparator instanceof ItemStackComparator itemStackComparator) {
+            List<StorageControllerItemIndex.Entry> entries = new ArrayList<>();
+            for (ItemStackKey key : index.getKeys(itemStackComparator.getFilterStack().getItem())) {
+                entries.add(index.getEntry(key));
             }
+            return entries;
         }
-        return map.entrySet().stream().sorted((a, b) -> b.getValue().compareTo(a.getValue()))
-                .map(entry -> (Predicate<ItemStack>) stack -> stack.getItem() == entry.getKey()).toList();
+        return index.getEntries();
+    }
+
+    /**
+     * Finds the matching index entry that occupies the lowest slot, to mimic a linear scan over the slots.
+     */
+    @Nullable
+    protected StorageControllerItemIndex.Entry findFirstMatchingEntry(Predicate<ItemStack> comparator) {
+        StorageControllerItemIndex.Entry result = null;
+        for (StorageControllerItemIndex.Entry entry : this.getCandidateEntries(comparator)) {
+            if (comparator.test(entry.getKey().getPrototype()) &&
+                    (result == null || entry.getSlots().firstInt() < result.getSlots().firstInt())) {
+                result = entry;
+            }
+        }
+        return result;
     }
 
     private <E extends GeoBlockEntity> PlayState predicate(AnimationState<E> event) {
@@ -263,30 +308,67 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
 
     @Override
     public List<ItemStack> getStacks() {
-        ItemStackHandler handler = this.itemStackHandlerInternal;
-        int size = handler.getSlots();
-        int usedSlots = 0;
-        List<ItemStack> result = new ArrayList<>(size);
-        for (int slot = 0; slot < size; slot++) {
-            ItemStack stack = handler.getStackInSlot(slot);
-            if (!stack.isEmpty()) {
-                usedSlots++;
-                this.mergeIntoList(result, stack.copy());
-            }
+        //the index already holds the merged view, one entry per item and nbt with its total count.
+        Collection<StorageControllerItemIndex.Entry> entries = this.itemStackHandlerInternal.getIndex().getEntries();
+        List<ItemStack> result = new ArrayList<>(entries.size());
+        for (StorageControllerItemIndex.Entry entry : entries) {
+            result.add(entry.getKey().toStack(entry.getTotalCountClamped()));
         }
-        this.usedSlots = usedSlots;
         return result;
     }
 
+    @Nullable
     @Override
-    public MessageUpdateStacks getMessageUpdateStacks() {
-        if (this.cachedMessageUpdateStacks == null) {
-            List<ItemStack> stacks = this.getStacks();
-            this.cachedMessageUpdateStacks = new MessageUpdateStacks(stacks, this.getUsedSlots(), this.getMaxSlots());
+    public CompletableFuture<MessageUpdateStacks> requestMessageUpdateStacks(long minVersion) {
+        //the cached snapshot may be outdated, sync trackers send the changes since then as delta.
+        if (this.cachedMessageUpdateStacks != null && this.cachedMessageUpdateStacksVersion >= minVersion)
+            return this.cachedMessageUpdateStacks;
+
+        //coalesce snapshot requests, everyone that needs a newer one waits for the next interval.
+        long time = this.level.getGameTime();
+        if (this.cachedMessageUpdateStacks != null &&
+                time - this.cachedMessageUpdateStacksTime < Occultism.SERVER_CONFIG.storage.snapshotIntervalTicks.get())
+            return null;
+
+        //capture on the server thread from the index, so the stable ids match what the sync trackers send in deltas.
+        long start = System.nanoTime();
+        StorageControllerItemIndex index = this.itemStackHandlerInternal.getIndex();
+        Collection<StorageControllerItemIndex.Entry> entries = index.getEntries();
+        int[] ids = new int[entries.size()];
+        List<ItemStack> stacks = new ArrayList<>(entries.size());
+        for (StorageControllerItemIndex.Entry entry : entries) {
+            ids[stacks.size()] = entry.getId();
+            stacks.add(entry.getKey().toStack(entry.getTotalCountClamped()));
         }
+        MessageUpdateStacks message = new MessageUpdateStacks(index.getVersion(), ids, stacks, this.getUsedSlots(),
+                this.getMaxSlots());
+        this.metrics.record(StorageControllerMetrics.Operation.GET_STACKS, start);
+
+        //then leave the expensive part to the worker pool
+        this.cachedMessageUpdateStacks = CompletableFuture.supplyAsync(() -> {
+            long compressStart = System.nanoTime();
+            message.compress();
+            this.metrics.record(StorageControllerMetrics.Operation.COMPRESS_STACKS, compressStart);
+            return message;
+        }, Util.backgroundExecutor());
+        this.cachedMessageUpdateStacksVersion = message.getVersion();
+        this.cachedMessageUpdateStacksTime = time;
         return this.cachedMessageUpdateStacks;
     }
 
+    @Override
+    public long getStacksVersion() {
+        return this.itemStackHandlerInternal.getIndex().getVersion();
+    }
+
+    @Override
+    public StorageControllerStackView getStackView() {
+        //created on first use, so controllers that are never searched server side do not track search keys.
+        if (this.stackView == null)
+            this.stackView = new StorageControllerStackView(this.itemStackHandlerInternal.getIndex());
+        return this.stackView;
+    }
+
     @Override
     public int getMaxSlots() {
         return this.maxSlots;
@@ -296,14 +378,12 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
     public void setMaxSlots(int slots) {
         this.maxSlots = slots;
         this.itemStackHandlerInternal.setSize(this.maxSlots);
-        //force resync
-        this.cachedMessageUpdateStacks = null;
         this.markNetworkDirty();
     }
 
     @Override
     public int getUsedSlots() {
-        return this.usedSlots;
+        return this.itemStackHandlerInternal.getIndex().getUsedSlots();
     }
 
     @Override
@@ -323,24 +403,21 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
 
     @Override
     public void addDepositOrder(GlobalBlockPos linkedMachinePosition, IItemStackComparator comparator, int amount) {
+        long start = System.nanoTime();
+        this.addDepositOrderInternal(linkedMachinePosition, comparator, amount);
+        this.metrics.record(StorageControllerMetrics.Operation.DEPOSIT_ORDER, start);
+    }
+
+    protected void addDepositOrderInternal(GlobalBlockPos linkedMachinePosition, IItemStackComparator comparator, int amount) {
         //check if the item is available in the desired amount, otherwise kill the order.
         ItemStack stack = this.getItemStack(comparator, amount, true);
         if (!stack.isEmpty()) {
-            UUID spiritUUID = this.depositOrderSpirits.get(linkedMachinePosition);
-            if (spiritUUID != null) {
-                EntityUtil.getEntityByUuiDGlobal(this.level.getServer(),
-                                spiritUUID).filter(SpiritEntity.class::isInstance).map(SpiritEntity.class::cast)
-                        .ifPresent(spirit -> {
-                            Optional<ManageMachineJob> job = spirit.getJob().filter(ManageMachineJob.class::isInstance)
-                                    .map(ManageMachineJob.class::cast);
-                            if (job.isPresent()) {
-                                job.get().addDepsitOrder(new DepositOrder((ItemStackComparator) comparator, amount));
-                            } else {
-                                this.removeDepositOrderSpirit(linkedMachinePosition);
-                            }
-                        });
+            if (this.depositOrderScheduler.hasSpirits(linkedMachinePosition)) {
+                //spirits serving the machine pick up the order in stack-sized trips when they are idle
+                this.depositOrderScheduler.enqueue(linkedMachinePosition, (ItemStackComparator) comparator, amount);
+                this.setChanged();
             } else {
-                //if the entity cannot be found, remove it from the list for now. it will re-register itself on spawn
+                //if no spirit serves the machine, remove it from the list for now. it will re-register itself on spawn
                 this.removeDepositOrderSpirit(linkedMachinePosition);
             }
         }
@@ -348,13 +425,29 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
 
     @Override
     public void addDepositOrderSpirit(GlobalBlockPos linkedMachinePosition, UUID spiritId) {
-        this.depositOrderSpirits.put(linkedMachinePosition, spiritId);
+        this.depositOrderScheduler.addSpirit(linkedMachinePosition, spiritId);
     }
 
     @Override
     public void removeDepositOrderSpirit(GlobalBlockPos linkedMachinePosition) {
         this.linkedMachines.remove(linkedMachinePosition);
-        this.depositOrderSpirits.remove(linkedMachinePosition);
+        this.depositOrderScheduler.removeMachine(linkedMachinePosition);
+        this.setChanged();
+    }
+
+    @Override
+    public void removeDepositOrderSpirit(GlobalBlockPos linkedMachinePosition, UUID spiritId) {
+        if (this.depositOrderScheduler.removeSpirit(linkedMachinePosition, spiritId))
+            this.removeDepositOrderSpirit(linkedMachinePosition);
+    }
+
+    @Nullable
+    @Override
+    public DepositOrder pollDepositOrder(GlobalBlockPos linkedMachinePosition, UUID spiritId) {
+        DepositOrder order = this.depositOrderScheduler.poll(linkedMachinePosition, spiritId);
+        if (order != null)
+            this.setChanged();
+        return order;
     }
 
     @Override
@@ -371,46 +464,59 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
         if (this.isBlacklisted(stack))
             return stack.getCount();
 
-        ItemStackHandler handler = this.itemStackHandlerInternal;
-        if (ItemHandlerHelper.insertItem(handler, stack, true).getCount() < stack.getCount()) {
-            stack = ItemHandlerHelper.insertItem(handler, stack, simulate);
-        }
-
-        return stack.getCount();
+        long start = System.nanoTime();
+        int remaining = this.itemStackHandlerInternal.insertStack(stack, simulate).getCount();
+        this.metrics.record(StorageControllerMetrics.Operation.INSERT_STACK, start);
+        return remaining;
     }
 
     @Override
     public ItemStack getOneOfMostCommonItem(Predicate<ItemStack> comparator, boolean simulate) {
-        if (comparator == null) {
+        return this.getMostCommonItem(comparator, 1, simulate);
+    }
+
+    @Override
+    public ItemStack getMostCommonItem(Predicate<ItemStack> comparator, int requestedSize, boolean simulate) {
+        if (requestedSize <= 0 || comparator == null) {
             return ItemStack.EMPTY;
         }
 
-        var comparators = this.getComparatorsSortedByAmount(comparator);
-
-        ItemStackHandler handler = this.itemStackHandlerInternal;
-
-        //we start with the comparator representing the most common item, and if we don't find anything we move on.
-        //Note: unless something weird happens we should always find something.
-        for (var currentComparator : comparators) {
-            for (int slot = 0; slot < handler.getSlots(); slot++) {
-
-                //first we force a simulation to check if the stack fits
-                ItemStack stack = handler.extractItem(slot, 1, true);
-                if (stack.isEmpty()) {
-                    continue;
-                }
+        long start = System.nanoTime();
+        //sum up the amounts per item (ignoring nbt) so we can find the most common one.
+        Map<Item, Long> amounts = new HashMap<>();
+        List<StorageControllerItemIndex.Entry> matchingEntries = new ArrayList<>();
+        for (StorageControllerItemIndex.Entry entry : this.getCandidateEntries(comparator)) {
+            if (comparator.test(entry.getKey().getPrototype())) {
+                matchingEntries.add(entry);
+                amounts.merge(entry.getKey().getItem(), entry.getTotalCount(), Long::sum);
+            }
+        }
 
-                if (currentComparator.test(stack)) {
-                    //now we do the actual operation (note: can still be a simulation, if caller wants to simulate=
-                    return handler.extractItem(slot, 1, simulate);
-                }
+        Item mostCommonItem = null;
+        long mostCommonAmount = 0;
+        for (Map.Entry<Item, Long> amount : amounts.entrySet()) {
+            if (amount.getValue() > mostCommonAmount) {
+                mostCommonItem = amount.getKey();
+                mostCommonAmount = amount.getValue();
+            }
+        }
 
-                //this slot does not match so we move on in the loop.
+        //take from the matching stack of that item that sits in the lowest slot.
+        StorageControllerItemIndex.Entry result = null;
+        for (StorageControllerItemIndex.Entry entry : matchingEntries) {
+            if (entry.getKey().getItem() == mostCommonItem &&
+                    (result == null || entry.getSlots().firstInt() < result.getSlots().firstInt())) {
+                result = entry;
             }
         }
 
         //nothing found
-        return ItemStack.EMPTY;
+        if (result == null)
+            return ItemStack.EMPTY;
+
+        ItemStack extracted = this.itemStackHandlerInternal.extractStack(result.getKey(), requestedSize, simulate);
+        this.metrics.record(StorageControllerMetrics.Operation.GET_ITEM_STACK, start);
+        return extracted;
     }
 
     @Override
@@ -418,92 +524,162 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
         if (requestedSize <= 0 || comparator == null) {
             return ItemStack.EMPTY;
         }
-        ItemStackHandler handler = this.itemStackHandlerInternal;
-        ItemStack firstMatchedStack = ItemStack.EMPTY;
-        int remaining = requestedSize;
-        for (int slot = 0; slot < handler.getSlots(); slot++) {
-
-            //first we force a simulation
-            ItemStack stack = handler.extractItem(slot, remaining, true);
-            if (stack.isEmpty()) {
-                continue;
-            }
 
-            //if we have not found anything yet we can just store the result or move on
-            if (firstMatchedStack.isEmpty()) {
+        long start = System.nanoTime();
+        StorageControllerItemIndex.Entry entry = this.findFirstMatchingEntry(comparator);
+        ItemStack extracted = entry == null ? ItemStack.EMPTY :
+                this.itemStackHandlerInternal.extractStack(entry.getKey(), requestedSize, simulate);
+        this.metrics.record(StorageControllerMetrics.Operation.GET_ITEM_STACK, start);
+        return extracted;
+    }
 
-                if (!comparator.test(stack)) {
-                    //this slot does not match so we move on
-                    continue;
-                }
-                //just take entire stack -> we're in sim mode
-                firstMatchedStack = stack.copy();
-            } else {
-                //we already found something, so we need to make sure the stacks match up, if not we move on.
-                if (!ItemHandlerHelper.canItemStacksStack(firstMatchedStack, stack)) {
-                    continue;
-                }
-            }
+    public int getAvailableAmount(IItemStackComparator comparator) {
+        if (comparator == null) {
+            return 0;
+        }
+        long totalCount = 0;
+        for (StorageControllerItemIndex.Entry entry : this.getCandidateEntries(comparator)) {
+            if (comparator.matches(entry.getKey().getPrototype()))
+                totalCount += entry.getTotalCount();
+        }
+        return (int) Math.min(totalCount, Integer.MAX_VALUE);
+    }
 
-            //get how many we have to extract in this round, cannot be more than we need nor more than is in this slot.
-            int toExtract = Math.min(stack.getCount(), remaining);
+    @Override
+    public void onContentsChanged() {
+        this.setChanged();
+        if (this.matrixData != null)
+            this.matrixData.setDirty();
+    }
 
-            //now we can leave simulation up to the caller
-            ItemStack extractedStack = handler.extractItem(slot, toExtract, simulate);
-            remaining -= extractedStack.getCount();
+    @Override
+    public StorageControllerMetrics getMetrics() {
+        return this.metrics;
+    }
 
-            //if we got all we need we can exit here.
-            if (remaining <= 0) {
-                break;
-            }
+    @Override
+    public void onLoad() {
+        super.onLoad();
+        if (!this.level.isClientSide) {
+            this.attachMatrix();
+            StorageControllerMetrics.register(this.metrics);
+            StorageControllerRegistry.register(this);
         }
+    }
 
-        //set the exact output count and return.
-        int extractCount = requestedSize - remaining;
-        if (!firstMatchedStack.isEmpty() && extractCount > 0) {
-            firstMatchedStack.setCount(extractCount);
+    @Override
+    public void onChunkUnloaded() {
+        super.onChunkUnloaded();
+        this.chunkUnloaded = true;
+    }
+
+    @Override
+    public void setRemoved() {
+        super.setRemoved();
+        if (this.matrixData != null && !this.chunkUnloaded) {
+            //the block is gone, from now on only the dropped item references the matrix
+            this.matrixData.setPlaced(false);
+            if (this.discardMatrix)
+                StorageControllerMatrixData.delete(this.level.getServer(), this.matrixId);
+        }
+        this.detachMatrix();
+        StorageControllerMetrics.unregister(this.metrics);
+        if (this.level != null && !this.level.isClientSide)
+            StorageControllerRegistry.unregister(this);
+    }
+
+    /**
+     * Connects the item handler to the matrix holding the stored items.
+     */
+    protected void attachMatrix() {
+        if (this.matrixData != null)
+            return;
+
+        if (this.matrixId == null)
+            this.matrixId = UUID.randomUUID();
+        StorageControllerMatrixData data = StorageControllerMatrixData.get(this.level.getServer(), this.matrixId);
+
+        if (data.isAttached() && !data.isAttachedTo(this.itemStackHandlerInternal)) {
+            //another controller uses this matrix, e.g. after a creative pick block copy. Give this one its own copy.
+            CompoundTag contents = data.getContents();
+            this.matrixId = UUID.randomUUID();
+            data = StorageControllerMatrixData.get(this.level.getServer(), this.matrixId);
+            if (contents != null && !this.migrateItemsToMatrix)
+                this.itemStackHandlerInternal.deserializeNBT(contents);
+            this.migrateItemsToMatrix = true;
+        } else if (!this.migrateItemsToMatrix) {
+            CompoundTag contents = data.getContents();
+            if (contents != null)
+                this.itemStackHandlerInternal.deserializeNBT(contents);
         }
 
-        return firstMatchedStack;
-    }
+        data.attach(this.itemStackHandlerInternal);
+        this.matrixData = data;
 
-    public int getAvailableAmount(IItemStackComparator comparator) {
-        if (comparator == null) {
-            return 0;
+        if (this.migrateItemsToMatrix) {
+            this.migrateItemsToMatrix = false;
+            data.setDirty();
+            this.setChanged();
         }
-        int totalCount = 0;
-        ItemStackHandler handler = this.itemStackHandlerInternal;
-        int size = handler.getSlots();
-        for (int slot = 0; slot < size; slot++) {
-            ItemStack stack = handler.getStackInSlot(slot);
-            if (comparator.matches(stack))
-                totalCount += stack.getCount();
+    }
+
+    /**
+     * Deletes the matrix once this block entity is removed, used if the block is broken without dropping an item.
+     */
+    public void discardMatrixOnRemoval() {
+        this.discardMatrix = true;
+    }
+
+    protected void detachMatrix() {
+        if (this.matrixData != null) {
+            this.matrixData.detach(this.itemStackHandlerInternal);
+            this.matrixData = null;
         }
-        return totalCount;
     }
 
     @Override
-    public void onContentsChanged() {
-        this.cachedMessageUpdateStacks = null;
-        this.setChanged();
+    public void addStacksListener(StorageControllerItemIndex.Listener listener) {
+        this.itemStackHandlerInternal.getIndex().addListener(listener);
+    }
+
+    @Override
+    public void removeStacksListener(StorageControllerItemIndex.Listener listener) {
+        this.itemStackHandlerInternal.getIndex().removeListener(listener);
     }
 
     @Override
     public void invalidateCaps() {
         super.invalidateCaps();
         this.itemStackHandler.invalidate();
+        this.itemHandlerView.invalidate();
+        if (this.itemHandlerViewInternal != null) {
+            this.itemHandlerViewInternal.invalidate();
+            this.itemHandlerViewInternal = null;
+        }
     }
 
     @Override
     public void reviveCaps() {
         super.reviveCaps();
         this.itemStackHandler = LazyOptional.of(() -> this.itemStackHandlerInternal);
+        this.itemHandlerView = LazyOptional.of(this::getItemHandlerView);
+    }
+
+    /**
+     * @return the item handler with one virtual slot per item, created on first use as it tracks the item index.
+     */
+    protected StorageControllerItemHandlerView getItemHandlerView() {
+        if (this.itemHandlerViewInternal == null)
+            this.itemHandlerViewInternal = new StorageControllerItemHandlerView(this, this.itemStackHandlerInternal);
+        return this.itemHandlerViewInternal;
     }
 
     @Nonnull
     @Override
     public <T> LazyOptional<T> getCapability(@Nonnull Capability<T> cap, Direction direction) {
         if (cap == ForgeCapabilities.ITEM_HANDLER) {
+            if (Occultism.SERVER_CONFIG.storage.virtualSlotItemHandler.get())
+                return this.itemHandlerView.cast();
             return this.itemStackHandler.cast();
         }
         return super.getCapability(cap, direction);
@@ -511,30 +687,17 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
 
     @Override
     public void load(CompoundTag compound) {
-        compound.remove("linkedMachines"); //linked machines are not saved, they self-register.
         super.load(compound);
 
-        //read stored items
-        if (compound.contains("items")) {
-            this.itemStackHandlerInternal.deserializeNBT(compound.getCompound("items"));
-            this.cachedMessageUpdateStacks = null;
-        }
-    }
-
-    @Override
-    protected void saveAdditional(CompoundTag compound) {
-        super.saveAdditional(compound);
-        compound.remove("linkedMachines"); //linked machines are not saved, they self-register.
-        compound.put("items", this.itemStackHandlerInternal.serializeNBT());
-    }
+        if (compound.hasUUID("matrixId"))
+            this.matrixId = compound.getUUID("matrixId");
 
-    @Override
-    public void loadNetwork(CompoundTag compound) {
-        this.setSortDirection(SortDirection.get(compound.getInt("sortDirection")));
-        this.setSortType(SortType.get(compound.getInt("sortType")));
+        this.depositOrderScheduler.deserializeNBT(compound.getList("depositOrders", Tag.TAG_COMPOUND));
 
-        if (compound.contains("maxSlots")) {
-            this.setMaxSlots(compound.getInt("maxSlots"));
+        //older versions stored the items in the block entity, they are moved into the matrix once attached
+        if (compound.contains("items")) {
+            this.itemStackHandlerInternal.deserializeNBT(compound.getCompound("items"));
+            this.migrateItemsToMatrix = true;
         }
 
         //read stored crafting matrix
@@ -551,23 +714,18 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
 
         if (compound.contains("orderStack"))
             this.orderStack = ItemStack.of(compound.getCompound("orderStack"));
-
-        //read the linked machines
-        this.linkedMachines = new HashMap<>();
-        if (compound.contains("linkedMachines")) {
-            ListTag machinesNbt = compound.getList("linkedMachines", Tag.TAG_COMPOUND);
-            for (int i = 0; i < machinesNbt.size(); i++) {
-                MachineReference reference = MachineReference.from(machinesNbt.getCompound(i));
-                this.linkedMachines.put(reference.insertGlobalPos, reference);
-            }
-        }
     }
 
     @Override
-    public CompoundTag saveNetwork(CompoundTag compound) {
-        compound.putInt("sortDirection", this.getSortDirection().getValue());
-        compound.putInt("sortType", this.getSortType().getValue());
-        compound.putInt("maxSlots", this.maxSlots);
+    protected void saveAdditional(CompoundTag compound) {
+        super.saveAdditional(compound);
+        //the items themselves are saved by the matrix
+        if (this.matrixId != null)
+            compound.putUUID("matrixId", this.matrixId);
+        compound.put("depositOrders", this.depositOrderScheduler.serializeNBT());
+        //not yet moved into a matrix, keep them where they were
+        if (this.migrateItemsToMatrix)
+            compound.put("items", this.itemStackHandlerInternal.serializeNBT());
 
         //write stored crafting matrix
         ListTag matrixNbt = new ListTag();
@@ -583,14 +741,29 @@ public class StorageControllerBlockEntity extends NetworkedBlockEntity implement
 
         if (!this.orderStack.isEmpty())
             compound.put("orderStack", this.orderStack.save(new CompoundTag()));
+        //linked machines are not saved, they self-register.
+    }
+
+    /**
+     * Only the state shown to players without the gui open is sent in block updates.
+     * The crafting matrix and order slot are synced by the container, the linked machines and stacks by dedicated
+     * messages to the players viewing the storage, see {@link com.klikli_dev.occultism.common.misc.LinkedMachinesSyncTracker}.
+     */
+    @Override
+    public void loadNetwork(CompoundTag compound) {
+        this.setSortDirection(SortDirection.get(compound.getInt("sortDirection")));
+        this.setSortType(SortType.get(compound.getInt("sortType")));
 
-        //write linked machines
-        ListTag machinesNbt = new ListTag();
-        for (Map.Entry<GlobalBlockPos, MachineReference> entry : this.linkedMachines.entrySet()) {
-            machinesNbt.add(entry.getValue().serializeNBT());
+        if (compound.contains("maxSlots")) {
+            this.setMaxSlots(compound.getInt("maxSlots"));
         }
-        compound.put("linkedMachines", machinesNbt);
+    }
 
+    @Override
+    public CompoundTag saveNetwork(CompoundTag compound) {
+        compound.putInt("sortDirection", this.getSortDirection().getValue());
+        compound.putInt("sortType", this.getSortType().getValue());
+        compound.putInt("maxSlots", this.maxSlots);
         return compound;
     }
 
@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.command;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.klikli_dev.occultism.Occultism;
+import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import com.klikli_dev.occultism.common.misc.StorageControllerMetrics;
+import com.klikli_dev.occultism.crafting.CraftingRecipeCache;
+import com.klikli_dev.occultism.network.OccultismPackets;
+import com.klikli_dev.occultism.network.PacketSplitter;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * /occultism storage stats [count] shows the storage controllers with the highest operation cost,
+ * /occultism storage stats reset clears the metrics and /occultism storage stats dump appends all metrics as one json
+ * line to logs/occultism-storage-stats.jsonl.
+ */
+public class StorageStatsCommand {
+
+    public static final int DEFAULT_COUNT = 10;
+    public static final String DUMP_FILE = "logs/occultism-storage-stats.jsonl";
+
+    //region Static Methods
+    public static ArgumentBuilder<CommandSourceStack, ?> register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        return Commands.literal("storage")
+                .then(Commands.literal("stats")
+                        .requires(cs -> cs.hasPermission(2))
+                        .executes(context -> showTop(context, DEFAULT_COUNT))
+                        .then(Commands.argument("count", IntegerArgumentType.integer(1, 100))
+                                .executes(context -> showTop(context, IntegerArgumentType.getInteger(context, "count"))))
+                        .then(Commands.literal("reset")
+                                .executes(StorageStatsCommand::reset))
+                        .then(Commands.literal("dump")
+                                .executes(StorageStatsCommand::dump))
+                );
+    }
+
+    private static int showTop(CommandContext<CommandSourceStack> context, int count) {
+        var top = StorageControllerMetrics.getTop(count);
+        context.getSource().sendSuccess(() -> Component.literal("Storage controllers by operation time (" + top.size() +
+                " of " + StorageControllerMetrics.getActive().size() + " loaded):"), false);
+
+        PacketSplitter splitter = OccultismPackets.SPLITTER;
+        context.getSource().sendSuccess(() -> Component.literal(String.format(
+                "Split messages: %d (%.1f MB), reassembled: %d, dropped: %d. Recipe cache hits: %d, misses: %d",
+                splitter.getSplitMessages(), splitter.getSplitBytes() / 1024.0 / 1024.0,
+                splitter.getReassembledMessages(), splitter.getDroppedReassemblies(),
+                CraftingRecipeCache.getHits(), CraftingRecipeCache.getMisses())), false);
+
+        int rank = 1;
+        for (StorageControllerMetrics metrics : top) {
+            GlobalBlockPos pos = metrics.getStorageController().getLinkedStorageControllerPosition();
+            String summary = String.format("#%d %s [%d, %d, %d]: %.2f ms, %d/%d slots, %.1f KB/s sync, %d queued orders",
+                    rank++, pos.getDimensionKey().location(), pos.getPos().getX(), pos.getPos().getY(),
+                    pos.getPos().getZ(), metrics.getTotalNanos() / 1.0e6, metrics.getStorageController().getUsedSlots(),
+                    metrics.getStorageController().getMaxSlots(), metrics.getSyncBytesPerSecond() / 1024,
+                    metrics.getDepositQueueDepth());
+            context.getSource().sendSuccess(() -> Component.literal(summary), false);
+
+            for (StorageControllerMetrics.Operation operation : StorageControllerMetrics.Operation.values()) {
+                StorageControllerMetrics.OperationMetrics operationMetrics = metrics.get(operation);
+                if (operationMetrics.getCount() == 0)
+                    continue;
+                String line = String.format("  %s: %dx, avg %.1f µs, p99 < %d µs, max %.1f µs", operation.getName(),
+                        operationMetrics.getCount(),
+                        operationMetrics.getTotalNanos() / 1.0e3 / operationMetrics.getCount(),
+                        operationMetrics.getPercentileMicros(0.99), operationMetrics.getMaxNanos() / 1.0e3);
+                context.getSource().sendSuccess(() -> Component.literal(line), false);
+            }
+        }
+        return top.size();
+    }
+
+    private static int reset(CommandContext<CommandSourceStack> context) {
+        StorageControllerMetrics.getActive().forEach(StorageControllerMetrics::reset);
+        context.getSource().sendSuccess(() -> Component.literal("Storage controller metrics reset."), true);
+        return 0;
+    }
+
+    private static int dump(CommandContext<CommandSourceStack> context) {
+        JsonArray controllers = new JsonArray();
+        for (StorageControllerMetrics metrics : StorageControllerMetrics.getActive()) {
+            controllers.add(metrics.toJson());
+        }
+        JsonObject json = new JsonObject();
+        json.addProperty("time", Instant.now().toString());
+        json.add("controllers", controllers);
+
+        File file = context.getSource().getServer().getFile(DUMP_FILE);
+        try {
+            Files.createDirectories(file.toPath().getParent());
+            Files.writeString(file.toPath(), json + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            Occultism.LOGGER.error("Failed to write storage controller metrics to {}", file, e);
+            context.getSource().sendFailure(Component.literal("Failed to write " + DUMP_FILE + ": " + e.getMessage()));
+            return 0;
+        }
+
+        context.getSource().sendSuccess(() -> Component.literal("Wrote metrics of " + controllers.size() +
+                " storage controllers to " + DUMP_FILE + "."), false);
+        return controllers.size();
+    }
+    //endregion Static Methods
+}
@@ -27,12 +27,9 @@ import com.klikli_dev.occultism.client.gui.storage.StorageControllerGuiBase;
 import com.klikli_dev.occultism.common.blockentity.StableWormholeBlockEntity;
 import com.klikli_dev.occultism.common.blockentity.StorageControllerBlockEntity;
 import com.klikli_dev.occultism.common.misc.StorageControllerCraftingInventory;
-import com.klikli_dev.occultism.network.MessageUpdateLinkedMachines;
-import com.klikli_dev.occultism.network.OccultismPackets;
+import com.klikli_dev.occultism.common.misc.StorageControllerRegistry;
 import com.klikli_dev.occultism.registry.OccultismContainers;
-import com.klikli_dev.occultism.util.BlockEntityUtil;
 import net.minecraft.core.BlockPos;
-import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.Slot;
@@ -127,14 +124,12 @@ public class StableWormholeContainer extends StorageControllerContainerBase {
             return false;
 
         //close container if storage controller block is destroyed
-        if (BlockEntityUtil.get(level, this.stableWormhole.getLinkedStorageControllerPosition()) != this.storageController)
+        if (StorageControllerRegistry.get(level, this.stableWormhole.getLinkedStorageControllerPosition()) != this.storageController)
             return false;
 
-        //send stack updates on a slow tick while interacting
+        //send linked machine updates on a slow tick while interacting, stack changes are sent in broadcastChanges
         if (!level.isClientSide && level.getGameTime() % 40 == 0) {
-            OccultismPackets.sendTo((ServerPlayer) player, this.storageController.getMessageUpdateStacks());
-            OccultismPackets.sendTo((ServerPlayer) player,
-                    new MessageUpdateLinkedMachines(this.storageController.getLinkedMachines()));
+            this.syncLinkedMachines(false);
         }
 
         //prevent player from interacting with the container if the controller is not in range
@@ -25,11 +25,8 @@ package com.klikli_dev.occultism.common.container.storage;
 import com.klikli_dev.occultism.client.gui.storage.StorageControllerGuiBase;
 import com.klikli_dev.occultism.common.blockentity.StorageControllerBlockEntity;
 import com.klikli_dev.occultism.common.misc.StorageControllerCraftingInventory;
-import com.klikli_dev.occultism.network.MessageUpdateLinkedMachines;
-import com.klikli_dev.occultism.network.OccultismPackets;
 import com.klikli_dev.occultism.registry.OccultismContainers;
 import net.minecraft.core.BlockPos;
-import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.Slot;
@@ -83,14 +80,14 @@ public class StorageControllerContainer extends StorageControllerContainerBase {
             this.storageController.getMatrix().put(i, this.matrix.getItem(i));
         }
         if (force)
-            this.storageController.markNetworkDirty();
+            this.storageController.setChanged();
     }
 
     @Override
     public void updateOrderSlot(boolean force) {
         this.storageController.setOrderStack(this.orderInventory.getItem(0));
         if (force)
-            this.storageController.markNetworkDirty();
+            this.storageController.setChanged();
     }
 
     @Override
@@ -110,11 +107,9 @@ public class StorageControllerContainer extends StorageControllerContainerBase {
         if (level.getBlockEntity(controllerPosition) != this.storageController)
             return false;
 
-        //send stack updates on a slow tick while interacting
+        //send linked machine updates on a slow tick while interacting, stack changes are sent in broadcastChanges
         if (!level.isClientSide && level.getGameTime() % 40 == 0) {
-            OccultismPackets.sendTo((ServerPlayer) player, this.storageController.getMessageUpdateStacks());
-            OccultismPackets.sendTo((ServerPlayer) player,
-                    new MessageUpdateLinkedMachines(this.storageController.getLinkedMachines()));
+            this.syncLinkedMachines(false);
         }
 
         //prevent player from interacting with the container if the controller is not in range
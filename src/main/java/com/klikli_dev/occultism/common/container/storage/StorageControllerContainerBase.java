@@ -26,11 +26,16 @@ import com.klikli_dev.occultism.TranslationKeys;
 import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
 import com.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
 import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import com.klikli_dev.occultism.api.common.data.SortDirection;
+import com.klikli_dev.occultism.api.common.data.SortType;
 import com.klikli_dev.occultism.client.gui.storage.StorageControllerGuiBase;
 import com.klikli_dev.occultism.common.misc.ItemStackComparator;
+import com.klikli_dev.occultism.common.misc.ItemStackKey;
 import com.klikli_dev.occultism.common.misc.StorageControllerCraftingInventory;
 import com.klikli_dev.occultism.common.misc.StorageControllerSlot;
-import com.klikli_dev.occultism.network.OccultismPackets;
+import com.klikli_dev.occultism.common.misc.LinkedMachinesSyncTracker;
+import com.klikli_dev.occultism.common.misc.StorageControllerSyncTracker;
+import com.klikli_dev.occultism.crafting.CraftingRecipeCache;
 import net.minecraft.ChatFormatting;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.NonNullList;
@@ -44,7 +49,6 @@ import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.*;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.crafting.CraftingRecipe;
-import net.minecraft.world.item.crafting.RecipeType;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.items.wrapper.PlayerMainInvWrapper;
@@ -70,6 +74,14 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
      * used to lock recipe while crafting
      */
     protected boolean recipeLocked = false;
+    /**
+     * Tracks which storage controller contents the client already knows, server side only.
+     */
+    protected StorageControllerSyncTracker syncTracker = new StorageControllerSyncTracker();
+    /**
+     * Tracks which linked machines the client already knows, server side only.
+     */
+    protected LinkedMachinesSyncTracker linkedMachinesSyncTracker = new LinkedMachinesSyncTracker();
 
     protected StorageControllerContainerBase(@Nullable MenuType<?> type, int id, Inventory playerInventory) {
         super(type, id);
@@ -120,6 +132,39 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
         return this.orderInventory;
     }
 
+    @Override
+    public void syncStacks(boolean fullSync) {
+        if (this.player instanceof ServerPlayer serverPlayer) {
+            this.syncTracker.sync(serverPlayer, this.getStorageController(), fullSync);
+        }
+    }
+
+    @Override
+    public void syncLinkedMachines(boolean fullSync) {
+        if (this.player instanceof ServerPlayer serverPlayer) {
+            this.linkedMachinesSyncTracker.sync(serverPlayer, this.getStorageController(), fullSync);
+        }
+    }
+
+    @Override
+    public void requestStackPage(String query, SortType sortType, SortDirection sortDirection, int offset, int count) {
+        if (sortType == null || sortDirection == null)
+            return;
+        if (this.player instanceof ServerPlayer serverPlayer) {
+            this.syncTracker.setPage(query, sortType, sortDirection, offset, count);
+            this.syncTracker.sync(serverPlayer, this.getStorageController(), false);
+        }
+    }
+
+    @Override
+    public void broadcastChanges() {
+        super.broadcastChanges();
+        //called every tick by the server, so we use it to send the changes to the storage controller contents.
+        //while shift crafting we wait until the end instead of sending a delta for every single craft.
+        if (!this.recipeLocked)
+            this.syncStacks(false);
+    }
+
     @Override
     public ItemStack quickMoveStack(Player player, int index) {
         if (player.level().isClientSide)
@@ -148,12 +193,9 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
                                 remainingItems);
                 slot.set(remainingItemStack);
 
-                //sync slots
+                //sync slots and updated stacks from storage controller
                 this.broadcastChanges();
 
-                //get updated stacks from storage controller and send to client
-                OccultismPackets.sendTo((ServerPlayer) player, storageController.getMessageUpdateStacks());
-
                 if (!remainingItemStack.isEmpty()) {
                     slot.onTake(player, slotStack);
                 }
@@ -169,6 +211,9 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
         this.updateOrderSlot(true); //only send network update on second call
         super.removed(playerIn);
         openContainers.values().removeIf(uuid -> uuid.equals(playerIn.getUUID()));
+        this.syncTracker.detach();
+        if (!playerIn.level().isClientSide && this.getStorageController() != null)
+            this.getStorageController().compactSlots();
     }
 
     protected void setupPlayerInventorySlots() {
@@ -212,8 +257,7 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
     protected abstract void setupPlayerHotbar();
 
     protected void findRecipeForMatrixClient() {
-        Optional<CraftingRecipe> optional =
-                this.player.level().getRecipeManager().getRecipeFor(RecipeType.CRAFTING, this.matrix, this.player.level());
+        Optional<CraftingRecipe> optional = CraftingRecipeCache.getRecipeFor(this.matrix, this.player.level());
         optional.ifPresentOrElse(iCraftingRecipe -> this.currentRecipe = iCraftingRecipe, () -> this.currentRecipe = null);
     }
 
@@ -224,9 +268,7 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
             this.currentRecipe = null;
             ServerPlayer serverplayerentity = (ServerPlayer) this.player;
             ItemStack itemstack = ItemStack.EMPTY;
-            Optional<CraftingRecipe> optional = this.player.level().getServer().getRecipeManager()
-                    .getRecipeFor(RecipeType.CRAFTING, this.matrix,
-                            this.player.level());
+            Optional<CraftingRecipe> optional = CraftingRecipeCache.getRecipeFor(this.matrix, this.player.level());
             if (optional.isPresent()) {
                 CraftingRecipe icraftingrecipe = optional.get();
                 if (this.result.setRecipeUsed(this.player.level(), serverplayerentity, icraftingrecipe)) {
@@ -240,6 +282,39 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
         }
     }
 
+    /**
+     * Takes the ingredients for as many crafts as the result stack size and the player inventory allow from the storage
+     * controller, with one extraction per distinct ingredient. Unused ingredients have to be returned by the caller.
+     *
+     * @return the reserved stacks, keyed by the ingredient in the recipe they are used for.
+     */
+    protected Map<ItemStackKey, ItemStack> reserveIngredients(Player player, IStorageController storageController,
+                                                            List<ItemStack> recipeCopy, ItemStack result, int resultStackSize) {
+        int maxCrafts = result.getMaxStackSize() / resultStackSize;
+        ItemStack remainingResult = ItemHandlerHelper.insertItemStacked(new PlayerMainInvWrapper(this.playerInventory),
+                result.copyWithCount(maxCrafts * resultStackSize), true);
+        maxCrafts -= (remainingResult.getCount() + resultStackSize - 1) / resultStackSize;
+
+        //a slot holding n items is refilled after the nth craft and then after every further craft.
+        Map<ItemStackKey, Integer> required = new HashMap<>();
+        for (int i = 0; i < recipeCopy.size(); i++) {
+            ItemStack recipeStack = recipeCopy.get(i);
+            if (recipeStack.isEmpty())
+                continue;
+            int refills = maxCrafts - this.matrix.getItem(i).getCount() + 1;
+            if (refills > 0)
+                required.merge(ItemStackKey.of(recipeStack), refills, Integer::sum);
+        }
+
+        Map<ItemStackKey, ItemStack> reserved = new HashMap<>();
+        for (Map.Entry<ItemStackKey, Integer> entry : required.entrySet()) {
+            ItemStack stack = storageController.getMostCommonItem(
+                    new ItemStackComparator(entry.getKey().getPrototype()), entry.getValue(), false);
+            reserved.put(entry.getKey(), stack);
+        }
+        return reserved;
+    }
+
     protected void craftShift(Player player, IStorageController storageController) {
         if (this.matrix == null) {
             return;
@@ -267,6 +342,11 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
 
         //get the stack size of the result
         int resultStackSize = result.getCount();
+
+        //reserve the ingredients for all crafts we can possibly do at once, instead of requesting them one by one.
+        Map<ItemStackKey, ItemStack> reservedIngredients = this.reserveIngredients(player, storageController,
+                recipeCopy, result, resultStackSize);
+
         List<ItemStack> resultList = new ArrayList<>();
         int crafted = 0;
         while (crafted + resultStackSize <= result.getMaxStackSize()) {
@@ -287,8 +367,8 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
                 break;
             }
 
-            //if recipe is no longer fulfilled, stop
-            if (!this.currentRecipe.matches(this.matrix, player.level())) {
+            //if recipe is no longer fulfilled, stop. while refilling with the same items this is a cache hit.
+            if (CraftingRecipeCache.getRecipeFor(this.matrix, player.level()).orElse(null) != this.currentRecipe) {
                 break;
             }
 
@@ -358,11 +438,12 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
                 //if the stack is empty, refill from storage and then continue looping
                 if (stackInSlot.isEmpty()) {
                     ItemStack recipeStack = recipeCopy.get(i);
+                    if (recipeStack.isEmpty())
+                        continue;
 
-                    ItemStackComparator comparator = !recipeStack.isEmpty() ? new ItemStackComparator(
-                            recipeStack) : null;
-
-                    ItemStack requestedItem = this.getStorageController().getOneOfMostCommonItem(comparator, false);
+                    ItemStack reserved = reservedIngredients.get(ItemStackKey.lookup(recipeStack));
+                    ItemStack requestedItem = reserved != null && !reserved.isEmpty() ? reserved.split(1) :
+                            storageController.getOneOfMostCommonItem(new ItemStackComparator(recipeStack), false);
                     this.matrix.setItem(i, requestedItem);
                 }
             }
@@ -377,6 +458,15 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
         }
         ItemHandlerHelper.giveItemToPlayer(player, finalResult);
 
+        //return what we did not use in one go
+        for (ItemStack leftover : reservedIngredients.values()) {
+            if (leftover.isEmpty())
+                continue;
+            int remaining = storageController.insertStack(leftover, false);
+            if (remaining > 0)
+                ItemHandlerHelper.giveItemToPlayer(player, leftover.copyWithCount(remaining));
+        }
+
         this.broadcastChanges();
 
         //unlock crafting matrix
@@ -384,7 +474,7 @@ public abstract class StorageControllerContainerBase extends AbstractContainerMe
 
         //update crafting matrix to handle container items / items that survive crafting
         this.slotsChanged(this.matrix);
-        OccultismPackets.sendTo((ServerPlayer) player, this.getStorageController().getMessageUpdateStacks());
+        this.syncStacks(false);
 
     }
 
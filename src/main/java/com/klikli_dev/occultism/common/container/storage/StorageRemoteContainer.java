@@ -27,13 +27,10 @@ import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
 import com.klikli_dev.occultism.client.gui.storage.StorageControllerGuiBase;
 import com.klikli_dev.occultism.common.item.storage.StorageRemoteItem;
 import com.klikli_dev.occultism.common.misc.StorageControllerCraftingInventory;
-import com.klikli_dev.occultism.network.MessageUpdateLinkedMachines;
-import com.klikli_dev.occultism.network.OccultismPackets;
 import com.klikli_dev.occultism.registry.OccultismContainers;
 import com.klikli_dev.occultism.util.CuriosUtil;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
-import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.Slot;
@@ -156,12 +153,10 @@ public class StorageRemoteContainer extends StorageControllerContainerBase {
         IStorageController storageController = this.getStorageController();
 
         //stillValid is constantly called, so we use it to send
-        //stack updates every 40 ticks.
+        //linked machine updates every 40 ticks. Stack changes are sent in broadcastChanges.
         if (storageController != null && !entityPlayer.level().isClientSide &&
                 entityPlayer.level().getGameTime() % 40 == 0) {
-            OccultismPackets.sendTo((ServerPlayer) this.player, this.getStorageController().getMessageUpdateStacks());
-            OccultismPackets.sendTo((ServerPlayer) this.player,
-                    new MessageUpdateLinkedMachines(this.getStorageController().getLinkedMachines()));
+            this.syncLinkedMachines(false);
         }
 
         //close container if storage controller block is destroyed ( -> if it is null here, this check is a bit different from the wormhole, because getStorageController() already handles that)
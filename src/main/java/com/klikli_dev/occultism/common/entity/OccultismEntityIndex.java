@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.entity;
+
+import com.klikli_dev.occultism.common.entity.familiar.IFamiliar;
+import com.klikli_dev.occultism.common.entity.spirit.SpiritEntity;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server side index of the loaded Occultism spirits and familiars by uuid, across all dimensions.
+ * Kept up to date by the entity join and leave level events, so looking one up does not need to search every level.
+ */
+public class OccultismEntityIndex {
+
+    private static final Map<UUID, Handle> ENTITIES = new ConcurrentHashMap<>();
+
+    //region Static Methods
+
+    /**
+     * @return true if entities of this kind are tracked by the index.
+     */
+    public static boolean isIndexed(Entity entity) {
+        return entity instanceof SpiritEntity || entity instanceof IFamiliar;
+    }
+
+    public static void onJoinLevel(Entity entity) {
+        if (isIndexed(entity))
+            ENTITIES.put(entity.getUUID(), new Handle(entity));
+    }
+
+    public static void onLeaveLevel(Entity entity) {
+        if (isIndexed(entity)) {
+            //when changing dimension the new copy of the entity may already have joined with the same uuid
+            ENTITIES.computeIfPresent(entity.getUUID(), (uuid, handle) -> handle.reference.get() == entity ? null : handle);
+        }
+    }
+
+    /**
+     * Clears the index, called when the server stops.
+     */
+    public static void clear() {
+        ENTITIES.clear();
+    }
+
+    /**
+     * @param uuid the uuid of the entity.
+     * @return the loaded spirit or familiar with the given uuid, empty if there is none.
+     */
+    public static Optional<Entity> get(@Nullable UUID uuid) {
+        if (uuid == null)
+            return Optional.empty();
+        Handle handle = ENTITIES.get(uuid);
+        Entity entity = handle != null ? handle.reference.get() : null;
+        return entity != null && !entity.isRemoved() ? Optional.of(entity) : Optional.empty();
+    }
+
+    /**
+     * @param uuid the uuid of the entity.
+     * @return the dimension the loaded spirit or familiar with the given uuid is in, null if there is none.
+     */
+    @Nullable
+    public static ResourceKey<Level> getDimension(@Nullable UUID uuid) {
+        Handle handle = uuid != null ? ENTITIES.get(uuid) : null;
+        return handle != null ? handle.dimension : null;
+    }
+    //endregion Static Methods
+
+    private static class Handle {
+        private final WeakReference<Entity> reference;
+        private final ResourceKey<Level> dimension;
+
+        private Handle(Entity entity) {
+            this.reference = new WeakReference<>(entity);
+            this.dimension = entity.level().dimension();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.klikli_dev.occultism.common.entity.ai.goal.FallbackDepositToControlle
 import com.klikli_dev.occultism.common.entity.ai.goal.ManageMachineGoal;
 import com.klikli_dev.occultism.common.entity.spirit.SpiritEntity;
 import com.klikli_dev.occultism.common.misc.DepositOrder;
+import com.klikli_dev.occultism.common.misc.StorageControllerRegistry;
 import com.klikli_dev.occultism.util.BlockEntityUtil;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
@@ -102,8 +103,7 @@ public class ManageMachineJob extends SpiritJob {
             return null;
 
         if (this.storageController == null) {
-            this.storageController = (IStorageController) BlockEntityUtil.get(this.entity.level(),
-                    this.storageControllerPosition);
+            this.storageController = StorageControllerRegistry.get(this.entity.level(), this.storageControllerPosition);
         }
 
         if (this.storageController == null)
@@ -165,8 +165,18 @@ public class ManageMachineJob extends SpiritJob {
         //we are basically inactive until we have both a storage controller and a managed machine.
         if (this.storageControllerPosition != null && this.managedMachine != null) {
             //if we don't have an order and there is one available, take it from queue.
-            if (this.getCurrentDepositOrder() == null && !this.depositOrderQueue.isEmpty()) {
-                this.setCurrentDepositOrder(this.depositOrderQueue.poll());
+            if (this.getCurrentDepositOrder() == null) {
+                if (!this.depositOrderQueue.isEmpty()) {
+                    //orders handed to the spirit directly by older versions are finished first
+                    this.setCurrentDepositOrder(this.depositOrderQueue.poll());
+                } else {
+                    //otherwise take the next trip for our machine from the controller, shared with all spirits serving it
+                    //the registry lookup does not unlink the controller if it is not loaded
+                    IStorageController storageController = StorageControllerRegistry.get(this.storageControllerPosition);
+                    if (storageController != null)
+                        this.setCurrentDepositOrder(storageController.pollDepositOrder(this.managedMachine.insertGlobalPos,
+                                this.entity.getUUID()));
+                }
             }
         }
 
@@ -216,6 +226,10 @@ public class ManageMachineJob extends SpiritJob {
         super.readJobFromNBT(compound);
     }
 
+    /**
+     * Queues an order for this spirit only. Usually orders are queued on the storage controller, see
+     * {@link IStorageController#addDepositOrder(GlobalBlockPos, com.klikli_dev.occultism.api.common.container.IItemStackComparator, int)}.
+     */
     public void addDepsitOrder(DepositOrder order) {
         this.depositOrderQueue.add(order);
     }
@@ -238,8 +252,13 @@ public class ManageMachineJob extends SpiritJob {
     protected void unregisterFromStorageController() {
         if (this.storageControllerPosition != null && this.managedMachine != null) {
             IStorageController storageController = this.getStorageController();
-            if (storageController != null)
-                storageController.removeDepositOrderSpirit(this.managedMachine.insertGlobalPos);
+            if (storageController != null) {
+                //hand back an order we did not pick up yet, so other spirits serving the machine can take it
+                if (this.currentDepositOrder != null && this.currentDepositOrder.comparator != null)
+                    storageController.addDepositOrder(this.managedMachine.insertGlobalPos,
+                            this.currentDepositOrder.comparator, this.currentDepositOrder.amount);
+                storageController.removeDepositOrderSpirit(this.managedMachine.insertGlobalPos, this.entity.getUUID());
+            }
         }
     }
 
@@ -23,8 +23,7 @@
 package com.klikli_dev.occultism.common.item;
 
 import com.klikli_dev.occultism.common.blockentity.GoldenSacrificialBowlBlockEntity;
-import com.klikli_dev.occultism.crafting.recipe.RitualRecipe;
-import com.klikli_dev.occultism.registry.OccultismRecipes;
+import com.klikli_dev.occultism.crafting.RitualRecipeIndex;
 import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
@@ -49,8 +48,7 @@ public class DummyTooltipItem extends Item {
 
     public void performRitual(Level level, BlockPos pos, GoldenSacrificialBowlBlockEntity blockEntity,
                               @Nullable Player player, ItemStack activationItem) {
-        var ritualRecipe = level.getRecipeManager().getAllRecipesFor(OccultismRecipes.RITUAL_TYPE.get())
-                .stream().filter(r -> r.getRitualDummy().getItem() == this).findFirst();
+        var ritualRecipe = RitualRecipeIndex.getByRitualDummy(level, this);
 
         var serverPlayer = player instanceof ServerPlayer s? s : null;
         ritualRecipe.ifPresent(r -> r.getRitual().finish(level, pos, blockEntity, serverPlayer, activationItem));
@@ -22,7 +22,9 @@
 
 package com.klikli_dev.occultism.common.item.storage;
 
+import com.klikli_dev.occultism.common.misc.StorageControllerMatrixData;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.entity.item.ItemEntity;
 import net.minecraft.world.item.BlockItem;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.block.Block;
@@ -33,6 +35,23 @@ public class StorageControllerBlockItem extends BlockItem {
         super(pBlock, pProperties);
     }
 
+    /**
+     * Deletes the matrix holding the stored items of the dropped controller, called if the item entity is destroyed or
+     * despawns.
+     */
+    public static void discardMatrix(ItemEntity itemEntity) {
+        CompoundTag blockEntityTag = getBlockEntityData(itemEntity.getItem());
+        if (itemEntity.level().isClientSide || blockEntityTag == null || !blockEntityTag.hasUUID("matrixId"))
+            return;
+        StorageControllerMatrixData.deleteIfUnplaced(itemEntity.level().getServer(), blockEntityTag.getUUID("matrixId"));
+    }
+
+    @Override
+    public void onDestroyed(ItemEntity itemEntity) {
+        super.onDestroyed(itemEntity);
+        discardMatrix(itemEntity);
+    }
+
     @Override
     public @Nullable CompoundTag getShareTag(ItemStack stack) {
         var tag = super.getShareTag(stack);
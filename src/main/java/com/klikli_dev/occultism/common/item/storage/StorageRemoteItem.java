@@ -25,7 +25,7 @@ package com.klikli_dev.occultism.common.item.storage;
 import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
 import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
 import com.klikli_dev.occultism.common.container.storage.StorageRemoteContainer;
-import com.klikli_dev.occultism.util.BlockEntityUtil;
+import com.klikli_dev.occultism.common.misc.StorageControllerRegistry;
 import com.klikli_dev.occultism.util.CuriosUtil;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
@@ -65,9 +65,7 @@ public class StorageRemoteItem extends Item implements MenuProvider {
             return null;
 
         GlobalBlockPos globalPos = GlobalBlockPos.from(stack.getTag().getCompound("linkedStorageController"));
-        BlockEntity blockEntity = BlockEntityUtil.get(level, globalPos);
-
-        return blockEntity instanceof IStorageController ? (IStorageController) blockEntity : null;
+        return StorageControllerRegistry.get(level, globalPos);
     }
 
     @Override
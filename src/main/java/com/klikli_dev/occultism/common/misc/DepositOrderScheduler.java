@@ -0,0 +1,245 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.item.ItemStack;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Queues the deposit orders of a storage controller per linked machine.
+ * Orders for the same item are merged while they wait, and handed out one stack-sized trip at a time to whichever
+ * spirit serving the machine is idle first, so several spirits can work on the same machine.
+ */
+public class DepositOrderScheduler {
+
+    protected final Map<GlobalBlockPos, MachineQueue> queues = new HashMap<>();
+    protected final StorageControllerMetrics metrics;
+    protected int queueDepth;
+
+    public DepositOrderScheduler(StorageControllerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    //region Getter / Setter
+
+    /**
+     * @return the number of pending orders over all machines.
+     */
+    public int getQueueDepth() {
+        return this.queueDepth;
+    }
+
+    /**
+     * @param machinePosition the insert position of the machine.
+     * @return the number of pending items for the given machine.
+     */
+    public int getPendingAmount(GlobalBlockPos machinePosition) {
+        MachineQueue queue = this.queues.get(machinePosition);
+        if (queue == null)
+            return 0;
+        int amount = 0;
+        for (PendingOrder order : queue.orders) {
+            amount += order.amount;
+        }
+        return amount;
+    }
+
+    public Set<UUID> getSpirits(GlobalBlockPos machinePosition) {
+        MachineQueue queue = this.queues.get(machinePosition);
+        return queue == null ? Collections.emptySet() : Collections.unmodifiableSet(queue.spirits);
+    }
+
+    public boolean hasSpirits(GlobalBlockPos machinePosition) {
+        MachineQueue queue = this.queues.get(machinePosition);
+        return queue != null && !queue.spirits.isEmpty();
+    }
+    //endregion Getter / Setter
+
+    public void addSpirit(GlobalBlockPos machinePosition, UUID spiritId) {
+        this.queues.computeIfAbsent(machinePosition, pos -> new MachineQueue()).spirits.add(spiritId);
+    }
+
+    /**
+     * Removes the given spirit from the spirits serving the machine.
+     *
+     * @param machinePosition the insert position of the machine.
+     * @param spiritId        the spirit.
+     * @return true if no spirit serves the machine anymore.
+     */
+    public boolean removeSpirit(GlobalBlockPos machinePosition, UUID spiritId) {
+        MachineQueue queue = this.queues.get(machinePosition);
+        if (queue == null)
+            return true;
+        queue.spirits.remove(spiritId);
+        return queue.spirits.isEmpty();
+    }
+
+    /**
+     * Removes the machine with all its spirits and pending orders.
+     *
+     * @param machinePosition the insert position of the machine.
+     */
+    public void removeMachine(GlobalBlockPos machinePosition) {
+        MachineQueue queue = this.queues.remove(machinePosition);
+        if (queue != null)
+            this.updateQueueDepth(-queue.orders.size());
+    }
+
+    /**
+     * Queues an order, merging it into a pending order for the same item if there is one.
+     * A merged order is not a separate sample of the dispatch latency, it is served with the order it was merged into.
+     *
+     * @param machinePosition the insert position of the machine.
+     * @param comparator      the comparator of the items to deposit.
+     * @param amount          the amount to deposit.
+     */
+    public void enqueue(GlobalBlockPos machinePosition, ItemStackComparator comparator, int amount) {
+        if (amount <= 0)
+            return;
+
+        MachineQueue queue = this.queues.computeIfAbsent(machinePosition, pos -> new MachineQueue());
+        for (PendingOrder order : queue.orders) {
+            if (isSameOrder(order.comparator, comparator)) {
+                order.amount += amount;
+                return;
+            }
+        }
+        queue.orders.add(new PendingOrder(comparator, amount, System.nanoTime()));
+        this.updateQueueDepth(1);
+    }
+
+    /**
+     * Hands out the next trip for the given machine.
+     * A spirit polling for a machine is registered as serving it, so spirits re-register after the controller was
+     * reloaded.
+     *
+     * @param machinePosition the insert position of the machine.
+     * @param spiritId        the polling spirit.
+     * @return an order for at most one stack of items, or null if there is no pending order.
+     */
+    @Nullable
+    public DepositOrder poll(GlobalBlockPos machinePosition, UUID spiritId) {
+        MachineQueue queue = this.queues.get(machinePosition);
+        if (queue == null) {
+            queue = new MachineQueue();
+            this.queues.put(machinePosition, queue);
+        }
+        queue.spirits.add(spiritId);
+
+        PendingOrder order = queue.orders.peek();
+        if (order == null)
+            return null;
+
+        //one sample per order, the time until its first trip leaves the queue
+        if (!order.dispatched) {
+            order.dispatched = true;
+            this.metrics.record(StorageControllerMetrics.Operation.DEPOSIT_DISPATCH, order.enqueuedNanos);
+        }
+        int tripSize = Math.max(1, order.comparator.getFilterStack().getMaxStackSize());
+        if (order.amount <= tripSize) {
+            queue.orders.poll();
+            this.updateQueueDepth(-1);
+            return new DepositOrder(order.comparator, order.amount);
+        }
+        order.amount -= tripSize;
+        return new DepositOrder(order.comparator, tripSize);
+    }
+
+    public void clear() {
+        this.queues.clear();
+        this.updateQueueDepth(-this.queueDepth);
+    }
+
+    protected void updateQueueDepth(int delta) {
+        this.queueDepth += delta;
+        this.metrics.setDepositQueueDepth(this.queueDepth);
+    }
+
+    public ListTag serializeNBT() {
+        ListTag machinesNbt = new ListTag();
+        for (Map.Entry<GlobalBlockPos, MachineQueue> entry : this.queues.entrySet()) {
+            if (entry.getValue().orders.isEmpty())
+                continue;
+            CompoundTag machineNbt = new CompoundTag();
+            machineNbt.put("machine", entry.getKey().serializeNBT());
+            ListTag ordersNbt = new ListTag();
+            for (PendingOrder order : entry.getValue().orders) {
+                ordersNbt.add(new DepositOrder(order.comparator, order.amount).serializeNBT());
+            }
+            machineNbt.put("orders", ordersNbt);
+            machinesNbt.add(machineNbt);
+        }
+        return machinesNbt;
+    }
+
+    public void deserializeNBT(ListTag machinesNbt) {
+        //the time orders were pending before the save is lost, they count as queued on load
+        this.clear();
+        for (int i = 0; i < machinesNbt.size(); i++) {
+            CompoundTag machineNbt = machinesNbt.getCompound(i);
+            GlobalBlockPos machinePosition = GlobalBlockPos.from(machineNbt.getCompound("machine"));
+            ListTag ordersNbt = machineNbt.getList("orders", Tag.TAG_COMPOUND);
+            for (int j = 0; j < ordersNbt.size(); j++) {
+                DepositOrder order = DepositOrder.from(ordersNbt.getCompound(j));
+                //comparators of removed items are read as null
+                if (order.comparator != null)
+                    this.enqueue(machinePosition, order.comparator, order.amount);
+            }
+        }
+    }
+
+    //region Static Methods
+    protected static boolean isSameOrder(ItemStackComparator a, ItemStackComparator b) {
+        return a.getMatchNbt() == b.getMatchNbt() && (a.getMatchNbt() ?
+                ItemStack.isSameItemSameTags(a.getFilterStack(), b.getFilterStack()) :
+                a.getFilterStack().getItem() == b.getFilterStack().getItem());
+    }
+    //endregion Static Methods
+
+    protected static class MachineQueue {
+        protected final Set<UUID> spirits = new LinkedHashSet<>();
+        protected final Deque<PendingOrder> orders = new ArrayDeque<>();
+    }
+
+    protected static class PendingOrder {
+        protected final ItemStackComparator comparator;
+        protected int amount;
+        protected final long enqueuedNanos;
+        /**
+         * True once the first trip of this order was handed out.
+         */
+        protected boolean dispatched;
+
+        protected PendingOrder(ItemStackComparator comparator, int amount, long enqueuedNanos) {
+            this.comparator = comparator;
+            this.amount = amount;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.google.common.base.Joiner;
+import com.klikli_dev.occultism.util.TextUtil;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.TooltipFlag;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The strings storage controllers search and sort by, computed once per stack instead of once per comparison or
+ * keystroke. Used by both the storage gui and the server side stack view, so both find the same items.
+ * Only depends on item and nbt of the stack, so it stays valid when the count changes.
+ */
+public class ItemSearchKeys {
+    protected final ItemStack stack;
+    protected final String name;
+    protected final String lowerName;
+    protected final String modName;
+    protected final String lowerModName;
+    protected final String lowerTags;
+    protected String lowerTooltip;
+
+    public ItemSearchKeys(ItemStack stack) {
+        this.stack = stack;
+        this.name = stack.getDisplayName().getString();
+        this.lowerName = this.name.toLowerCase();
+        String modName = TextUtil.getModNameForGameObject(stack.getItem());
+        this.modName = modName == null ? "" : modName;
+        this.lowerModName = this.modName.toLowerCase();
+        StringBuilder tagStringBuilder = new StringBuilder();
+        stack.getTags().forEach(
+                tag -> tagStringBuilder.append(tag.location()).append(" ")
+        );
+        this.lowerTags = tagStringBuilder.toString().toLowerCase();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getLowerName() {
+        return this.lowerName;
+    }
+
+    public String getModName() {
+        return this.modName;
+    }
+
+    public String getLowerModName() {
+        return this.lowerModName;
+    }
+
+    public String getLowerTags() {
+        return this.lowerTags;
+    }
+
+    /**
+     * @param player the player to build the tooltip for, null on the server.
+     * @return the tooltip, built on first use as most searches do not need it.
+     */
+    public String getLowerTooltip(@Nullable Player player) {
+        if (this.lowerTooltip == null) {
+            try {
+                List<String> tooltip = this.stack.getTooltipLines(player, TooltipFlag.Default.NORMAL).stream()
+                        .map(Component::getString).collect(Collectors.toList());
+                this.lowerTooltip = Joiner.on(' ').join(tooltip).toLowerCase().trim();
+            } catch (Exception | LinkageError e) {
+                //some items only support tooltips on the client, or only with a player
+                this.lowerTooltip = this.lowerName;
+            }
+        }
+        return this.lowerTooltip;
+    }
+
+    /**
+     * Checks the stack against a storage search: "@" searches the mod name, "#" the tooltip, "$" the tags and
+     * anything else the display name.
+     *
+     * @param search the lower case search text.
+     * @param player the player to build the tooltip for, null on the server.
+     * @return true if the stack matches.
+     */
+    public boolean matches(String search, @Nullable Player player) {
+        if (search.startsWith("@")) {
+            return this.lowerModName.contains(search.substring(1));
+        } else if (search.startsWith("#")) {
+            return this.getLowerTooltip(player).contains(search.substring(1));
+        } else if (search.startsWith("$")) {
+            return this.lowerTags.contains(search.substring(1));
+        } else {
+            //Note: If search stops working, forge may have re-implemented .getUnformattedComponentText() for translated text components
+            return this.lowerName.contains(search);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+/**
+ * Identifies a kind of item stack by item and nbt, ignoring the count.
+ * Two stacks that share a key can be merged into one another.
+ */
+public class ItemStackKey {
+
+    protected final Item item;
+    @Nullable
+    protected final CompoundTag tag;
+    protected final int hash;
+    protected ItemStack prototype;
+
+    protected ItemStackKey(Item item, @Nullable CompoundTag tag) {
+        this.item = item;
+        this.tag = tag;
+        this.hash = 31 * item.hashCode() + (tag != null ? tag.hashCode() : 0);
+    }
+
+    //region Static Methods
+
+    /**
+     * Creates a key for the given stack that is safe to store, the stack nbt is copied.
+     *
+     * @param stack the stack to create the key for.
+     * @return the key.
+     */
+    public static ItemStackKey of(@Nonnull ItemStack stack) {
+        CompoundTag tag = stack.getTag();
+        return new ItemStackKey(stack.getItem(), tag != null ? tag.copy() : null);
+    }
+
+    /**
+     * Creates a key for the given stack that shares the nbt with the stack.
+     * Only use for short-lived lookups, never store the result.
+     *
+     * @param stack the stack to create the key for.
+     * @return the key.
+     */
+    public static ItemStackKey lookup(@Nonnull ItemStack stack) {
+        return new ItemStackKey(stack.getItem(), stack.getTag());
+    }
+    //endregion Static Methods
+
+    //region Getter / Setter
+    public Item getItem() {
+        return this.item;
+    }
+
+    @Nullable
+    public CompoundTag getTag() {
+        return this.tag;
+    }
+
+    /**
+     * @return a cached stack of size 1 representing this key. Must not be modified!
+     */
+    public ItemStack getPrototype() {
+        if (this.prototype == null)
+            this.prototype = this.toStack(1);
+        return this.prototype;
+    }
+    //endregion Getter / Setter
+
+    /**
+     * @param stack the stack to check.
+     * @return true if the given stack is of the item and nbt represented by this key.
+     */
+    public boolean matches(@Nonnull ItemStack stack) {
+        return !stack.isEmpty() && stack.getItem() == this.item && Objects.equals(stack.getTag(), this.tag);
+    }
+
+    /**
+     * @param count the stack size.
+     * @return a new stack with the item and nbt of this key.
+     */
+    public ItemStack toStack(int count) {
+        ItemStack stack = new ItemStack(this.item, count);
+        if (this.tag != null)
+            stack.setTag(this.tag.copy());
+        return stack;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ItemStackKey other))
+            return false;
+        return this.hash == other.hash && this.item == other.item && Objects.equals(this.tag, other.tag);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+}
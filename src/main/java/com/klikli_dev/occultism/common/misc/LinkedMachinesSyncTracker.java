@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
+import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import com.klikli_dev.occultism.api.common.data.MachineReference;
+import com.klikli_dev.occultism.network.MessageUpdateLinkedMachines;
+import com.klikli_dev.occultism.network.OccultismPackets;
+import net.minecraft.server.level.ServerPlayer;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks which linked machines of a storage controller a single client knows about, and sends only the machines that
+ * were linked, changed or removed since the last sync.
+ * Machine references may be modified in place, e.g. when a machine is renamed, so the tracker keeps copies and
+ * compares them by value.
+ */
+public class LinkedMachinesSyncTracker {
+
+    protected final Map<GlobalBlockPos, MachineReference> knownMachines = new HashMap<>();
+    protected IStorageController storageController;
+
+    /**
+     * Sends the changes to the linked machines of the given storage controller to the player.
+     * If the storage controller differs from the last call, all machines are sent.
+     *
+     * @param player            the player to sync to.
+     * @param storageController the storage controller to sync, may be null if it is not available.
+     * @param fullSync          true to send all machines.
+     */
+    public void sync(ServerPlayer player, @Nullable IStorageController storageController, boolean fullSync) {
+        if (storageController == null)
+            return;
+
+        Map<GlobalBlockPos, MachineReference> linkedMachines = storageController.getLinkedMachines();
+        if (fullSync || storageController != this.storageController) {
+            this.storageController = storageController;
+            this.knownMachines.clear();
+            for (MachineReference machine : linkedMachines.values()) {
+                this.knownMachines.put(machine.insertGlobalPos, machine.copy());
+            }
+            OccultismPackets.sendTo(player, new MessageUpdateLinkedMachines(linkedMachines));
+            return;
+        }
+
+        List<MachineReference> changed = new ArrayList<>();
+        for (MachineReference machine : linkedMachines.values()) {
+            MachineReference known = this.knownMachines.get(machine.insertGlobalPos);
+            if (known == null || !known.isSameAs(machine))
+                changed.add(machine);
+        }
+        List<GlobalBlockPos> removed = new ArrayList<>();
+        for (GlobalBlockPos pos : this.knownMachines.keySet()) {
+            if (!linkedMachines.containsKey(pos))
+                removed.add(pos);
+        }
+        if (changed.isEmpty() && removed.isEmpty())
+            return;
+
+        for (MachineReference machine : changed) {
+            this.knownMachines.put(machine.insertGlobalPos, machine.copy());
+        }
+        for (GlobalBlockPos pos : removed) {
+            this.knownMachines.remove(pos);
+        }
+        OccultismPackets.sendTo(player, new MessageUpdateLinkedMachines(changed, removed));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.items.IItemHandler;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An item handler view of a storage controller for automation. Instead of the physical slots it exposes one empty
+ * insertion slot followed by one virtual slot per distinct item and nbt, backed by the item index.
+ * Insertion into any slot goes through the index, extraction from a virtual slot takes the item from wherever it is
+ * stored, so neither scans the physical slots.
+ * <p>
+ * Virtual slots are reordered when items are removed, so callers must not assume that a slot keeps its item.
+ * Like extraction, a virtual slot reports at most one full stack of its item, the total may exceed any slot limit.
+ */
+public class StorageControllerItemHandlerView implements IItemHandler, StorageControllerItemIndex.Listener {
+
+    protected static final int INSERTION_SLOT = 0;
+
+    protected final IStorageController storageController;
+    protected final StorageControllerItemStackHandler handler;
+    protected final List<StorageControllerItemIndex.Entry> entries = new ArrayList<>();
+    /**
+     * The stacks returned by {@link #getStackInSlot(int)}, one per entry and kept up to date instead of copied per call.
+     */
+    protected final List<ItemStack> views = new ArrayList<>();
+    protected final Reference2IntMap<StorageControllerItemIndex.Entry> positions = new Reference2IntOpenHashMap<>();
+
+    public StorageControllerItemHandlerView(IStorageController storageController, StorageControllerItemStackHandler handler) {
+        this.storageController = storageController;
+        this.handler = handler;
+        this.positions.defaultReturnValue(-1);
+        this.handler.getIndex().addListener(this);
+        this.onIndexRebuilt();
+    }
+
+    /**
+     * Stops tracking the index. The view must not be used afterwards.
+     */
+    public void invalidate() {
+        this.handler.getIndex().removeListener(this);
+    }
+
+    @Override
+    public int getSlots() {
+        return this.entries.size() + 1;
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack getStackInSlot(int slot) {
+        StorageControllerItemIndex.Entry entry = this.getEntry(slot);
+        if (entry == null)
+            return ItemStack.EMPTY;
+        ItemStack view = this.views.get(slot - 1);
+        //callers copy or insert what they see here, so do not report more than fits into a slot
+        view.setCount(Math.min(entry.getTotalCountClamped(), view.getMaxStackSize()));
+        return view;
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack insertItem(int slot, @Nonnull ItemStack stack, boolean simulate) {
+        //all slots accept everything, the index decides where it goes.
+        if (stack.isEmpty() || this.storageController.isBlacklisted(stack))
+            return stack;
+        return this.handler.insertStack(stack, simulate);
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack extractItem(int slot, int amount, boolean simulate) {
+        StorageControllerItemIndex.Entry entry = this.getEntry(slot);
+        if (entry == null || amount <= 0)
+            return ItemStack.EMPTY;
+        ItemStackKey key = entry.getKey();
+        return this.handler.extractStack(key, Math.min(amount, key.getPrototype().getMaxStackSize()), simulate);
+    }
+
+    @Override
+    public int getSlotLimit(int slot) {
+        StorageControllerItemIndex.Entry entry = this.getEntry(slot);
+        if (entry != null)
+            return this.views.get(slot - 1).getMaxStackSize();
+        return this.handler.getSlotLimit(0);
+    }
+
+    @Override
+    public boolean isItemValid(int slot, @Nonnull ItemStack stack) {
+        return !this.storageController.isBlacklisted(stack);
+    }
+
+    protected StorageControllerItemIndex.Entry getEntry(int slot) {
+        if (slot == INSERTION_SLOT || slot > this.entries.size() || slot < 0)
+            return null;
+        return this.entries.get(slot - 1);
+    }
+
+    @Override
+    public void onEntryChanged(StorageControllerItemIndex.Entry entry) {
+        if (this.positions.getInt(entry) < 0) {
+            this.positions.put(entry, this.entries.size());
+            this.entries.add(entry);
+            this.views.add(entry.getKey().toStack(1));
+        }
+    }
+
+    @Override
+    public void onEntryRemoved(StorageControllerItemIndex.Entry entry) {
+        int position = this.positions.removeInt(entry);
+        if (position < 0)
+            return;
+        //move the last entry into the gap, so removal does not shift all following slots.
+        int last = this.entries.size() - 1;
+        StorageControllerItemIndex.Entry lastEntry = this.entries.remove(last);
+        ItemStack lastView = this.views.remove(last);
+        if (position != last) {
+            this.entries.set(position, lastEntry);
+            this.views.set(position, lastView);
+            this.positions.put(lastEntry, position);
+        }
+    }
+
+    @Override
+    public void onIndexRebuilt() {
+        this.entries.clear();
+        this.views.clear();
+        this.positions.clear();
+        for (StorageControllerItemIndex.Entry entry : this.handler.getIndex().getEntries()) {
+            this.onEntryChanged(entry);
+        }
+    }
+}
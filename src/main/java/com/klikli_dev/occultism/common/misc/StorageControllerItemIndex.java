@@ -0,0 +1,293 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Keeps track of which slots of a storage controller hold which item (including nbt) and how many of it are stored.
+ * Updated per slot change, so lookups cost the number of matching slots instead of the number of total slots.
+ */
+public class StorageControllerItemIndex {
+
+    protected final Map<ItemStackKey, Entry> entries = new HashMap<>();
+    protected final Map<Item, Set<ItemStackKey>> keysByItem = new HashMap<>();
+    protected final BitSet occupiedSlots = new BitSet();
+    protected ItemStackKey[] slotKeys = new ItemStackKey[0];
+    protected int[] slotCounts = new int[0];
+    protected int usedSlots;
+    protected final List<Listener> listeners = new ArrayList<>();
+    protected int nextId;
+    protected long version;
+    protected Map<ItemStackKey, Entry> previousEntries;
+
+    //region Getter / Setter
+
+    /**
+     * @return all entries, one per distinct item and nbt combination.
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(this.entries.values());
+    }
+
+    /**
+     * @param item the item to look up.
+     * @return the keys of all stored stacks of the given item, regardless of nbt.
+     */
+    public Set<ItemStackKey> getKeys(Item item) {
+        Set<ItemStackKey> keys = this.keysByItem.get(item);
+        return keys != null ? Collections.unmodifiableSet(keys) : Collections.emptySet();
+    }
+
+    @Nullable
+    public Entry getEntry(ItemStackKey key) {
+        return this.entries.get(key);
+    }
+
+    @Nullable
+    public Entry getEntry(@Nonnull ItemStack stack) {
+        return stack.isEmpty() ? null : this.entries.get(ItemStackKey.lookup(stack));
+    }
+
+    /**
+     * @return a counter that is incremented with every change, used to tell how recent a snapshot of the contents is.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the number of non-empty slots.
+     */
+    public int getUsedSlots() {
+        return this.usedSlots;
+    }
+    //endregion Getter / Setter
+
+    public void addListener(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * @param fromSlot the first slot to consider.
+     * @return the first empty slot at or after fromSlot. May be outside the valid slot range.
+     */
+    public int nextFreeSlot(int fromSlot) {
+        return this.occupiedSlots.nextClearBit(fromSlot);
+    }
+
+    /**
+     * Re-indexes all slots. Needs to be called whenever slot indices shift.
+     *
+     * @param stacks the slot contents.
+     */
+    public void rebuild(List<ItemStack> stacks) {
+        //keep the ids of entries that survive the rebuild stable
+        this.previousEntries = new HashMap<>(this.entries);
+        this.entries.clear();
+        this.keysByItem.clear();
+        this.occupiedSlots.clear();
+        this.usedSlots = 0;
+        this.slotKeys = new ItemStackKey[stacks.size()];
+        this.slotCounts = new int[stacks.size()];
+        for (int slot = 0; slot < stacks.size(); slot++) {
+            this.update(slot, stacks.get(slot));
+        }
+        this.previousEntries = null;
+        this.version++;
+
+        for (Listener listener : this.listeners) {
+            listener.onIndexRebuilt();
+        }
+    }
+
+    /**
+     * Updates the index with the new contents of the given slot.
+     *
+     * @param slot  the slot that changed.
+     * @param stack the new slot contents.
+     */
+    public void update(int slot, @Nonnull ItemStack stack) {
+        this.ensureCapacity(slot + 1);
+        ItemStackKey oldKey = this.slotKeys[slot];
+
+        if (oldKey != null) {
+            if (oldKey.matches(stack)) {
+                //same item, only the count changed
+                Entry entry = this.entries.get(oldKey);
+                entry.totalCount += stack.getCount() - this.slotCounts[slot];
+                this.slotCounts[slot] = stack.getCount();
+                this.notifyChanged(entry);
+                return;
+            }
+            this.remove(slot, oldKey);
+        }
+
+        if (!stack.isEmpty())
+            this.add(slot, stack);
+    }
+
+    protected void add(int slot, ItemStack stack) {
+        Entry entry = this.entries.get(ItemStackKey.lookup(stack));
+        if (entry == null) {
+            Entry previous = this.previousEntries != null ? this.previousEntries.get(ItemStackKey.lookup(stack)) : null;
+            entry = new Entry(previous != null ? previous.id : this.nextId++, ItemStackKey.of(stack));
+            this.entries.put(entry.key, entry);
+            this.keysByItem.computeIfAbsent(entry.key.getItem(), k -> new HashSet<>()).add(entry.key);
+        }
+        entry.slots.add(slot);
+        entry.totalCount += stack.getCount();
+
+        this.slotKeys[slot] = entry.key;
+        this.slotCounts[slot] = stack.getCount();
+        this.occupiedSlots.set(slot);
+        this.usedSlots++;
+        this.notifyChanged(entry);
+    }
+
+    protected void remove(int slot, ItemStackKey key) {
+        Entry entry = this.entries.get(key);
+        entry.slots.remove(slot);
+        entry.totalCount -= this.slotCounts[slot];
+        if (entry.slots.isEmpty()) {
+            this.entries.remove(key);
+            Set<ItemStackKey> keys = this.keysByItem.get(key.getItem());
+            keys.remove(key);
+            if (keys.isEmpty())
+                this.keysByItem.remove(key.getItem());
+        }
+
+        this.slotKeys[slot] = null;
+        this.slotCounts[slot] = 0;
+        this.occupiedSlots.clear(slot);
+        this.usedSlots--;
+
+        if (this.previousEntries == null) {
+            entry.version = ++this.version;
+            for (Listener listener : this.listeners) {
+                if (entry.slots.isEmpty())
+                    listener.onEntryRemoved(entry);
+                else
+                    listener.onEntryChanged(entry);
+            }
+        }
+    }
+
+    protected void notifyChanged(Entry entry) {
+        //while rebuilding listeners are notified once at the end
+        if (this.previousEntries != null)
+            return;
+        entry.version = ++this.version;
+        for (Listener listener : this.listeners) {
+            listener.onEntryChanged(entry);
+        }
+    }
+
+    protected void ensureCapacity(int size) {
+        if (this.slotKeys.length < size) {
+            int newSize = Math.max(size, this.slotKeys.length * 2);
+            this.slotKeys = Arrays.copyOf(this.slotKeys, newSize);
+            this.slotCounts = Arrays.copyOf(this.slotCounts, newSize);
+        }
+    }
+
+    /**
+     * Notified about changes to the index, e.g. to sync the contents to clients.
+     */
+    public interface Listener {
+        /**
+         * Called when an entry was added or its count changed.
+         */
+        void onEntryChanged(Entry entry);
+
+        /**
+         * Called when the last slot holding the entry's item was emptied.
+         */
+        void onEntryRemoved(Entry entry);
+
+        /**
+         * Called after the whole index was rebuilt. Entry ids of items still present are preserved.
+         */
+        void onIndexRebuilt();
+    }
+
+    public static class Entry {
+        protected final int id;
+        protected final ItemStackKey key;
+        protected final IntSortedSet slots = new IntRBTreeSet();
+        protected long totalCount;
+        protected long version;
+
+        public Entry(int id, ItemStackKey key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        /**
+         * @return an id that identifies this item within the storage controller, stable for as long as the item is stored.
+         */
+        public int getId() {
+            return this.id;
+        }
+
+        public ItemStackKey getKey() {
+            return this.key;
+        }
+
+        /**
+         * @return the slots holding this item, in ascending order. Must not be modified!
+         */
+        public IntSortedSet getSlots() {
+            return this.slots;
+        }
+
+        /**
+         * @return the index version of the last change to this entry.
+         */
+        public long getVersion() {
+            return this.version;
+        }
+
+        public long getTotalCount() {
+            return this.totalCount;
+        }
+
+        /**
+         * @return the total count, capped to fit into an item stack count.
+         */
+        public int getTotalCountClamped() {
+            return (int) Math.min(this.totalCount, Integer.MAX_VALUE);
+        }
+    }
+}
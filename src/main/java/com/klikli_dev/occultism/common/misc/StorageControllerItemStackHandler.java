@@ -24,22 +24,51 @@ package com.klikli_dev.occultism.common.misc;
 
 import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
 import com.klikli_dev.occultism.common.data.NonNullArrayList;
-import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.ListTag;
-import net.minecraft.nbt.Tag;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.nbt.*;
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.items.ItemStackHandler;
+import net.minecraftforge.registries.ForgeRegistries;
 
 import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 
 public class StorageControllerItemStackHandler extends ItemStackHandler {
 
+    /**
+     * Version of the compact save format. Saves without a version use the old one-tag-per-slot format.
+     */
+    public static final int FORMAT_VERSION = 2;
+    /**
+     * Max entries per chunk of the compact format, keeps the individual arrays small.
+     */
+    public static final int CHUNK_SIZE = 1024;
+
     protected int maxStackSize;
     protected int maxSlots;
     protected boolean overrideItemStackSizes;
     protected IStorageController storageController;
+    protected StorageControllerItemIndex index = new StorageControllerItemIndex();
+    /**
+     * True if we are oversized and emptied slots may be removed. Removal is deferred to {@link #compact()}, so slot
+     * indices stay stable in between.
+     */
+    protected boolean compactionPending;
+    /**
+     * Saved contents that have not been read yet. Deserialization is deferred until the contents are first accessed.
+     */
+    protected CompoundTag pendingNbt;
+    /**
+     * The last serialized contents, reused as long as neither the index version nor the size changed.
+     */
+    protected CompoundTag cachedNbt;
+    protected long cachedNbtVersion;
+    protected int cachedNbtSize;
 
     public StorageControllerItemStackHandler(IStorageController storageController, int size, int maxStackSize,
                                              boolean overrideItemStackSizes) {
@@ -49,6 +78,12 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
         this.maxSlots = size;
         this.maxStackSize = maxStackSize;
         this.overrideItemStackSizes = overrideItemStackSizes;
+        this.index.rebuild(this.stacks);
+    }
+
+    public StorageControllerItemIndex getIndex() {
+        this.ensureLoaded();
+        return this.index;
     }
 
     @Override
@@ -58,20 +93,44 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
         //store new desired size
         this.maxSlots = size;
 
+        //applied to the slots once the contents are loaded
+        if (this.pendingNbt != null)
+            return;
+
         //if we need to increase, we simply copy to a bigger list
         if (size > this.stacks.size()) {
             //add empty item stacks until we are full
             this.stacks.addAll(Collections.nCopies(size - this.stacks.size(), ItemStack.EMPTY));
         }
-        //if list got smaller we prune what wer can, the rest is removed ony by one when a full stack is removed
+        //if list got smaller the overhead slots become tombstones that are removed on the next compaction
         else if (size < this.stacks.size()) {
-            this.prune();
+            this.compactionPending = true;
         }
     }
 
+    @Override
+    public int getSlots() {
+        this.ensureLoaded();
+        return super.getSlots();
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack getStackInSlot(int slot) {
+        this.ensureLoaded();
+        return super.getStackInSlot(slot);
+    }
+
+    @Override
+    public void setStackInSlot(int slot, @Nonnull ItemStack stack) {
+        this.ensureLoaded();
+        super.setStackInSlot(slot, stack);
+    }
+
     @Nonnull
     @Override
     public ItemStack insertItem(int slot, @Nonnull ItemStack stack, boolean simulate) {
+        this.ensureLoaded();
         if (slot > this.maxSlots - 1) //if we are oversized, do not allow insertion into the overhead.
             return stack;
         return super.insertItem(slot, stack, simulate);
@@ -80,14 +139,93 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
     @Nonnull
     @Override
     public ItemStack extractItem(int slot, int amount, boolean simulate) {
+        this.ensureLoaded();
         ItemStack result = this.extractItemOverride(slot, amount, simulate);
 
-        if (!simulate && this.stacks.size() > this.maxSlots) {
-            //in real mode if we are above desired size, delete empty slots.
-            if (this.stacks.get(slot).isEmpty())
-                this.stacks.remove(slot);
+        //in real mode if we are above desired size, the emptied slot can be removed on the next compaction.
+        if (!simulate && this.stacks.size() > this.maxSlots && this.stacks.get(slot).isEmpty())
+            this.compactionPending = true;
+
+        return result;
+    }
+
+    /**
+     * Inserts the given stack, first topping up slots that already hold the same item, then filling free slots.
+     * Uses the item index, so the cost depends on the number of matching slots rather than the total slot count.
+     *
+     * @param stack    the stack to insert.
+     * @param simulate true for simulation.
+     * @return the remaining stack that could not be inserted.
+     */
+    @Nonnull
+    public ItemStack insertStack(@Nonnull ItemStack stack, boolean simulate) {
+        if (stack.isEmpty())
+            return stack;
+
+        this.ensureLoaded();
+        int slotLimit = Math.min(this.maxSlots, this.stacks.size());
+        ItemStack remaining = stack;
+
+        StorageControllerItemIndex.Entry entry = this.index.getEntry(stack);
+        if (entry != null) {
+            //copy the slots, inserting may modify the index.
+            for (int slot : entry.getSlots().toIntArray()) {
+                if (slot >= slotLimit)
+                    break;
+                remaining = this.insertItem(slot, remaining, simulate);
+                if (remaining.isEmpty())
+                    return ItemStack.EMPTY;
+            }
+        }
+
+        //in simulation free slots stay free, so we just move on to the next one.
+        for (int slot = this.index.nextFreeSlot(0); slot < slotLimit; slot = this.index.nextFreeSlot(slot + 1)) {
+            remaining = this.insertItem(slot, remaining, simulate);
+            if (remaining.isEmpty())
+                return ItemStack.EMPTY;
+        }
+
+        return remaining;
+    }
+
+    /**
+     * Extracts up to the given amount of the item represented by the key, across all slots holding it.
+     *
+     * @param key      the item to extract.
+     * @param amount   the max amount to extract.
+     * @param simulate true for simulation.
+     * @return the extracted stack.
+     */
+    @Nonnull
+    public ItemStack extractStack(ItemStackKey key, int amount, boolean simulate) {
+        this.ensureLoaded();
+        StorageControllerItemIndex.Entry entry = this.index.getEntry(key);
+        if (entry == null || amount <= 0)
+            return ItemStack.EMPTY;
+
+        //the first extracted stack is returned as is, so capability data of the stored stack is kept
+        ItemStack result = ItemStack.EMPTY;
+        //copy the slots, extracting may modify the index.
+        for (int slot : entry.getSlots().toIntArray()) {
+            if (!result.isEmpty()) {
+                //the key ignores capabilities, only merge stacks that would also stack in a regular inventory
+                ItemStack existing = this.stacks.get(slot);
+                if (!ItemStack.isSameItemSameTags(result, existing) || !result.areCapsCompatible(existing))
+                    continue;
+            }
+            //use the override to keep slot indices stable while we iterate
+            ItemStack extracted = this.extractItemOverride(slot, amount - result.getCount(), simulate);
+            if (result.isEmpty())
+                result = extracted;
+            else
+                result.grow(extracted.getCount());
+            if (result.getCount() >= amount)
+                break;
         }
 
+        if (!simulate && this.stacks.size() > this.maxSlots)
+            this.compactionPending = true;
+
         return result;
     }
 
@@ -96,6 +234,7 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
         if (amount == 0)
             return ItemStack.EMPTY;
 
+        this.ensureLoaded();
         this.validateSlotIndex(slot);
 
         ItemStack existing = this.stacks.get(slot);
@@ -135,53 +274,265 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
                 stack.getMaxStackSize());
     }
 
+    /**
+     * Saves the contents aggregated per item instead of per slot. Item names and nbt are stored once in per-controller
+     * dictionaries, entries reference them by index and are written in chunks of parallel arrays.
+     * Slot positions are not saved, on load the contents are packed into the first slots.
+     */
     @Override
     public CompoundTag serializeNBT() {
-        ListTag nbtTagList = new ListTag();
-        for (int i = 0; i < this.stacks.size(); i++) {
-            if (!this.stacks.get(i).isEmpty()) {
-                CompoundTag itemTag = new CompoundTag();
-                ItemStack stack = this.stacks.get(i);
-                itemTag.putInt("Slot", i);
-                stack.save(itemTag);
-                itemTag.putInt("RealSize", stack.getCount());
-                nbtTagList.add(itemTag);
+        //not accessed since loading, so the saved contents are still accurate
+        if (this.pendingNbt != null)
+            return this.pendingNbt.copy();
+
+        if (this.cachedNbt != null && this.cachedNbtVersion == this.index.getVersion() &&
+                this.cachedNbtSize == this.stacks.size())
+            return this.cachedNbt.copy();
+
+        Object2IntMap<Item> itemIndices = new Object2IntOpenHashMap<>();
+        itemIndices.defaultReturnValue(-1);
+        Object2IntMap<CompoundTag> tagIndices = new Object2IntOpenHashMap<>();
+        ListTag itemNames = new ListTag();
+        ListTag tags = new ListTag();
+        ListTag chunks = new ListTag();
+        ListTag looseStacks = new ListTag();
+
+        int chunkEntries = 0;
+        int[] keys = new int[CHUNK_SIZE * 2];
+        long[] counts = new long[CHUNK_SIZE];
+
+        for (StorageControllerItemIndex.Entry entry : this.index.getEntries()) {
+            int[] slots = entry.getSlots().toIntArray();
+            ItemStack first = this.stacks.get(slots[0]);
+
+            //the index ignores capability data, stacks that differ in it cannot be merged into one entry.
+            boolean capsCompatible = true;
+            for (int i = 1; i < slots.length && capsCompatible; i++) {
+                capsCompatible = first.areCapsCompatible(this.stacks.get(slots[i]));
+            }
+            if (!capsCompatible) {
+                for (int slot : slots) {
+                    looseStacks.add(this.saveStack(this.stacks.get(slot)));
+                }
+                continue;
+            }
+
+            //everything but id and count goes into the dictionary, e.g. nbt and capability data
+            CompoundTag extras = first.save(new CompoundTag());
+            extras.remove("id");
+            extras.remove("Count");
+            //tag indices are 1-based, 0 means no extra data
+            int tagIndex = 0;
+            if (!extras.isEmpty()) {
+                tagIndex = tagIndices.getInt(extras);
+                if (tagIndex == 0) {
+                    tags.add(extras);
+                    tagIndex = tags.size();
+                    tagIndices.put(extras, tagIndex);
+                }
+            }
+            Item item = entry.getKey().getItem();
+            int itemIndex = itemIndices.getInt(item);
+            if (itemIndex < 0) {
+                itemIndex = itemNames.size();
+                itemNames.add(StringTag.valueOf(ForgeRegistries.ITEMS.getKey(item).toString()));
+                itemIndices.put(item, itemIndex);
+            }
+
+            keys[chunkEntries * 2] = itemIndex;
+            keys[chunkEntries * 2 + 1] = tagIndex;
+            counts[chunkEntries] = entry.getTotalCount();
+            chunkEntries++;
+
+            if (chunkEntries == CHUNK_SIZE) {
+                chunks.add(this.saveChunk(keys, counts, chunkEntries));
+                chunkEntries = 0;
             }
         }
+        if (chunkEntries > 0)
+            chunks.add(this.saveChunk(keys, counts, chunkEntries));
+
         CompoundTag nbt = new CompoundTag();
-        nbt.put("Items", nbtTagList);
+        nbt.putInt("Version", FORMAT_VERSION);
         nbt.putInt("Size", this.stacks.size());
-        return nbt;
+        nbt.put("ItemNames", itemNames);
+        nbt.put("Tags", tags);
+        nbt.put("Chunks", chunks);
+        if (!looseStacks.isEmpty())
+            nbt.put("LooseStacks", looseStacks);
+
+        this.cachedNbt = nbt;
+        this.cachedNbtVersion = this.index.getVersion();
+        this.cachedNbtSize = this.stacks.size();
+        return nbt.copy();
     }
 
+    /**
+     * Only remembers the saved contents, they are read on first access.
+     */
     @Override
     public void deserializeNBT(CompoundTag nbt) {
-        this.setSize(nbt.contains("Size", Tag.TAG_INT) ? nbt.getInt("Size") : this.stacks.size());
+        this.pendingNbt = nbt;
+        this.cachedNbt = null;
+        this.compactionPending = false;
+        if (nbt.contains("Size", Tag.TAG_INT))
+            this.maxSlots = nbt.getInt("Size");
+    }
+
+    /**
+     * Reads the saved contents if deserialization was deferred.
+     */
+    protected void ensureLoaded() {
+        if (this.pendingNbt == null)
+            return;
+
+        CompoundTag nbt = this.pendingNbt;
+        this.pendingNbt = null;
+
+        int size = nbt.contains("Size", Tag.TAG_INT) ? nbt.getInt("Size") : this.stacks.size();
+        this.stacks = NonNullArrayList.withSize(size, ItemStack.EMPTY);
+
+        if (nbt.contains("Version", Tag.TAG_INT))
+            this.loadCompact(nbt);
+        else
+            this.loadLegacy(nbt);
+
+        this.onLoad();
+        //apply size changes requested while loading was deferred
+        this.setSize(this.maxSlots);
+    }
+
+    protected void loadCompact(CompoundTag nbt) {
+        ListTag itemNames = nbt.getList("ItemNames", Tag.TAG_STRING);
+        ListTag tags = nbt.getList("Tags", Tag.TAG_COMPOUND);
+        ListTag chunks = nbt.getList("Chunks", Tag.TAG_COMPOUND);
+
+        int slot = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            CompoundTag chunk = chunks.getCompound(c);
+            int[] keys = chunk.getIntArray("Keys");
+            long[] counts = chunk.getLongArray("Counts");
+            for (int i = 0; i < counts.length && i * 2 + 1 < keys.length; i++) {
+                int tagIndex = keys[i * 2 + 1];
+                CompoundTag stackTag = tagIndex > 0 ? tags.getCompound(tagIndex - 1).copy() : new CompoundTag();
+                stackTag.putString("id", itemNames.getString(keys[i * 2]));
+                stackTag.putByte("Count", (byte) 1);
+
+                //items that no longer exist are dropped, same as ItemStack.of does for single stacks
+                ItemStack prototype = ItemStack.of(stackTag);
+                if (prototype.isEmpty())
+                    continue;
+
+                int stackLimit = Math.max(1, this.getStackLimit(-1, prototype));
+                for (long remaining = counts[i]; remaining > 0; remaining -= stackLimit) {
+                    slot = this.placeStack(slot, prototype.copyWithCount((int) Math.min(stackLimit, remaining)));
+                }
+            }
+        }
+
+        ListTag looseStacks = nbt.getList("LooseStacks", Tag.TAG_COMPOUND);
+        for (int i = 0; i < looseStacks.size(); i++) {
+            ItemStack stack = this.loadStack(looseStacks.getCompound(i));
+            if (!stack.isEmpty())
+                slot = this.placeStack(slot, stack);
+        }
+    }
+
+    /**
+     * Reads the old format that stored one tag per occupied slot.
+     */
+    protected void loadLegacy(CompoundTag nbt) {
         ListTag tagList = nbt.getList("Items", Tag.TAG_COMPOUND);
         for (int i = 0; i < tagList.size(); i++) {
             CompoundTag itemTags = tagList.getCompound(i);
             int slot = itemTags.getInt("Slot");
 
             if (slot >= 0 && slot < this.stacks.size()) {
-                ItemStack stack = ItemStack.of(itemTags);
-                stack.setCount(itemTags.getInt("RealSize"));
-                this.stacks.set(slot, stack);
+                this.stacks.set(slot, this.loadStack(itemTags));
             }
         }
-        this.onLoad();
+    }
+
+    /**
+     * Puts the stack into the given slot, growing past the size if the contents no longer fit, e.g. after the stack
+     * size config was lowered. The overhead is then handled like any other oversized state.
+     *
+     * @return the next slot to fill.
+     */
+    protected int placeStack(int slot, ItemStack stack) {
+        if (slot < this.stacks.size())
+            this.stacks.set(slot, stack);
+        else
+            this.stacks.add(stack);
+        return slot + 1;
+    }
+
+    protected CompoundTag saveStack(ItemStack stack) {
+        CompoundTag itemTag = stack.save(new CompoundTag());
+        itemTag.putInt("RealSize", stack.getCount());
+        return itemTag;
+    }
+
+    protected ItemStack loadStack(CompoundTag itemTag) {
+        ItemStack stack = ItemStack.of(itemTag);
+        stack.setCount(itemTag.getInt("RealSize"));
+        return stack;
+    }
+
+    protected CompoundTag saveChunk(int[] keys, long[] counts, int entries) {
+        CompoundTag chunk = new CompoundTag();
+        chunk.putIntArray("Keys", Arrays.copyOf(keys, entries * 2));
+        chunk.putLongArray("Counts", Arrays.copyOf(counts, entries));
+        return chunk;
+    }
+
+    @Override
+    protected void onLoad() {
+        this.index.rebuild(this.stacks);
     }
 
     @Override
     protected void onContentsChanged(int slot) {
+        this.index.update(slot, this.stacks.get(slot));
         this.storageController.onContentsChanged();
     }
 
-    public void prune() {
-        //iterate from the end and remove empty stuff until we have our desired size
-        for (int i = this.stacks.size() - 1; i >= 0 && this.stacks.size() > this.maxSlots; i--) {
-            if (this.stacks.get(i).isEmpty())
-                this.stacks.remove(i);
+    public boolean isCompactionPending() {
+        return this.compactionPending;
+    }
+
+    /**
+     * Removes empty slots, starting from the end, until we are back to the desired size.
+     * Shifts slot indices, so must not be called while iterating slots.
+     */
+    public void compact() {
+        this.ensureLoaded();
+        this.compactionPending = false;
+        int toRemove = this.stacks.size() - this.maxSlots;
+        if (toRemove <= 0)
+            return;
+
+        BitSet removedSlots = new BitSet(this.stacks.size());
+        for (int i = this.stacks.size() - 1; i >= 0 && toRemove > 0; i--) {
+            if (this.stacks.get(i).isEmpty()) {
+                removedSlots.set(i);
+                toRemove--;
+            }
         }
+        if (removedSlots.isEmpty())
+            return;
+
+        //move the remaining stacks down in one pass instead of shifting the list once per removed slot
+        int size = this.stacks.size();
+        int target = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removedSlots.get(i))
+                this.stacks.set(target++, this.stacks.get(i));
+        }
+        this.stacks.subList(target, size).clear();
+
+        //slot indices shifted, so we need to re-index.
+        this.index.rebuild(this.stacks);
     }
 
 }
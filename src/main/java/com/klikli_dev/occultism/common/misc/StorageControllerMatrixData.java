@@ -0,0 +1,202 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.klikli_dev.occultism.Occultism;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.storage.LevelResource;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Holds the contents of one storage controller, stored in its own file in the overworld data folder.
+ * The controller block and its item only carry the matrix id, so the contents do not end up in chunk, player or item
+ * nbt. Only matrices marked dirty are written on world save.
+ * <p>
+ * Matrices are kept outside the vanilla data storage, which never evicts. A matrix stays loaded while a controller
+ * uses it and is dropped on the next world save after that. The file is deleted once the matrix is known to be
+ * discarded: the controller was broken in creative mode, or its dropped item was destroyed or despawned.
+ */
+public class StorageControllerMatrixData extends SavedData {
+
+    public static final String NAME_PREFIX = Occultism.MODID + "_storage_matrix_";
+
+    private static final Map<UUID, StorageControllerMatrixData> LOADED = new HashMap<>();
+
+    /**
+     * The last saved contents, used while no controller is attached.
+     */
+    @Nullable
+    protected CompoundTag contents;
+    /**
+     * The item handler of the controller currently using this matrix, the live source of the contents.
+     */
+    @Nullable
+    protected StorageControllerItemStackHandler handler;
+    /**
+     * True while a controller block holding this matrix exists in the world, loaded or not.
+     * Otherwise the matrix is only referenced by items.
+     */
+    protected boolean placed;
+
+    //region Static Methods
+    public static StorageControllerMatrixData get(MinecraftServer server, UUID matrixId) {
+        StorageControllerMatrixData data = LOADED.get(matrixId);
+        if (data == null) {
+            data = read(getFile(server, matrixId));
+            LOADED.put(matrixId, data);
+        }
+        return data;
+    }
+
+    public static StorageControllerMatrixData load(CompoundTag compound) {
+        StorageControllerMatrixData data = new StorageControllerMatrixData();
+        if (compound.contains("items", Tag.TAG_COMPOUND))
+            data.contents = compound.getCompound("items");
+        data.placed = compound.getBoolean("placed");
+        return data;
+    }
+
+    /**
+     * Writes all dirty matrices and drops the ones no controller uses from memory.
+     * Called when the overworld is saved.
+     */
+    public static void saveAll(MinecraftServer server) {
+        for (Iterator<Map.Entry<UUID, StorageControllerMatrixData>> it = LOADED.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<UUID, StorageControllerMatrixData> entry = it.next();
+            entry.getValue().save(getFile(server, entry.getKey()));
+            if (!entry.getValue().isAttached())
+                it.remove();
+        }
+    }
+
+    /**
+     * Deletes the matrix, its contents are lost.
+     */
+    public static void delete(MinecraftServer server, UUID matrixId) {
+        LOADED.remove(matrixId);
+        try {
+            Files.deleteIfExists(getFile(server, matrixId).toPath());
+        } catch (IOException e) {
+            Occultism.LOGGER.error("Could not delete storage matrix {}", matrixId, e);
+        }
+    }
+
+    /**
+     * Deletes the matrix if only items reference it, called when such an item is destroyed.
+     * Matrices of placed controllers are kept, e.g. if the item was a creative copy of a placed controller.
+     */
+    public static void deleteIfUnplaced(MinecraftServer server, UUID matrixId) {
+        StorageControllerMatrixData data = get(server, matrixId);
+        if (!data.isAttached() && !data.placed)
+            delete(server, matrixId);
+    }
+
+    /**
+     * Drops all loaded matrices without saving, called on server stop after the final save.
+     */
+    public static void clear() {
+        LOADED.clear();
+    }
+
+    protected static File getFile(MinecraftServer server, UUID matrixId) {
+        //the same file the overworld data storage would use
+        return server.getWorldPath(LevelResource.ROOT).resolve("data").resolve(NAME_PREFIX + matrixId + ".dat").toFile();
+    }
+
+    protected static StorageControllerMatrixData read(File file) {
+        if (file.exists()) {
+            try {
+                return load(NbtIo.readCompressed(file).getCompound("data"));
+            } catch (IOException e) {
+                Occultism.LOGGER.error("Could not load storage matrix from {}", file, e);
+            }
+        }
+        return new StorageControllerMatrixData();
+    }
+    //endregion Static Methods
+
+    //region Getter / Setter
+    public boolean isAttached() {
+        return this.handler != null;
+    }
+
+    public boolean isAttachedTo(StorageControllerItemStackHandler handler) {
+        return this.handler == handler;
+    }
+
+    public void setPlaced(boolean placed) {
+        if (this.placed != placed) {
+            this.placed = placed;
+            this.setDirty();
+        }
+    }
+
+    /**
+     * @return the current contents, serialized.
+     */
+    @Nullable
+    public CompoundTag getContents() {
+        return this.handler != null ? this.handler.serializeNBT() : this.contents;
+    }
+    //endregion Getter / Setter
+
+    /**
+     * Makes the given handler the source of the contents. Loading the stored contents into it is up to the caller.
+     */
+    public void attach(StorageControllerItemStackHandler handler) {
+        this.handler = handler;
+        this.contents = null;
+        this.setPlaced(true);
+    }
+
+    /**
+     * Keeps a snapshot of the contents of the given handler and releases it.
+     */
+    public void detach(StorageControllerItemStackHandler handler) {
+        if (this.handler != handler)
+            return;
+        this.contents = handler.serializeNBT();
+        this.handler = null;
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag compound) {
+        CompoundTag contents = this.getContents();
+        if (contents != null)
+            compound.put("items", contents);
+        compound.putBoolean("placed", this.placed);
+        return compound;
+    }
+}
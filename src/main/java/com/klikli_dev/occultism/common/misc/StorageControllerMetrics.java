@@ -0,0 +1,299 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Operation counters and latency histograms of one storage controller, shown by /occultism storage stats.
+ * Recording is a few atomic increments, so it is always enabled.
+ * Snapshots are compressed on worker threads, so all counters are thread safe.
+ */
+public class StorageControllerMetrics {
+
+    /**
+     * Metrics of all loaded storage controllers.
+     */
+    private static final Set<StorageControllerMetrics> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    protected final IStorageController storageController;
+    protected final OperationMetrics[] operations = new OperationMetrics[Operation.values().length];
+    protected final AtomicLong syncBytes = new AtomicLong();
+    protected volatile int depositQueueDepth;
+    protected volatile long sinceNanos = System.nanoTime();
+
+    public StorageControllerMetrics(IStorageController storageController) {
+        this.storageController = storageController;
+        for (int i = 0; i < this.operations.length; i++) {
+            this.operations[i] = new OperationMetrics();
+        }
+    }
+
+    //region Static Methods
+    public static void register(StorageControllerMetrics metrics) {
+        ACTIVE.add(metrics);
+    }
+
+    public static void unregister(StorageControllerMetrics metrics) {
+        ACTIVE.remove(metrics);
+    }
+
+    /**
+     * Forgets all controllers, called when the server stops as block entities are not removed on shutdown.
+     */
+    public static void clear() {
+        ACTIVE.clear();
+    }
+
+    public static Collection<StorageControllerMetrics> getActive() {
+        return Collections.unmodifiableSet(ACTIVE);
+    }
+
+    /**
+     * @param count the max number of controllers to return.
+     * @return the loaded storage controllers with the highest total operation time.
+     */
+    public static List<StorageControllerMetrics> getTop(int count) {
+        List<StorageControllerMetrics> metrics = new ArrayList<>(ACTIVE);
+        metrics.sort((a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+        return metrics.subList(0, Math.min(count, metrics.size()));
+    }
+    //endregion Static Methods
+
+    //region Getter / Setter
+    public IStorageController getStorageController() {
+        return this.storageController;
+    }
+
+    public OperationMetrics get(Operation operation) {
+        return this.operations[operation.ordinal()];
+    }
+
+    /**
+     * @return the time spent in all operations since the last reset, not counting time spent waiting in queues.
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (Operation operation : Operation.values()) {
+            if (!operation.isWaitTime())
+                total += this.get(operation).getTotalNanos();
+        }
+        return total;
+    }
+
+    public long getSyncBytes() {
+        return this.syncBytes.get();
+    }
+
+    /**
+     * @return the number of deposit orders waiting for a spirit.
+     */
+    public int getDepositQueueDepth() {
+        return this.depositQueueDepth;
+    }
+
+    public void setDepositQueueDepth(int depositQueueDepth) {
+        this.depositQueueDepth = depositQueueDepth;
+    }
+
+    /**
+     * @return the average number of snapshot bytes sent to clients per second since the last reset.
+     */
+    public double getSyncBytesPerSecond() {
+        double seconds = (System.nanoTime() - this.sinceNanos) / 1.0e9;
+        return seconds > 0 ? this.syncBytes.get() / seconds : 0;
+    }
+    //endregion Getter / Setter
+
+    /**
+     * Records an operation that started at the given time and ended now.
+     *
+     * @param operation  the operation.
+     * @param startNanos the {@link System#nanoTime()} at the start of the operation.
+     */
+    public void record(Operation operation, long startNanos) {
+        this.operations[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void addSyncBytes(long bytes) {
+        this.syncBytes.addAndGet(bytes);
+    }
+
+    public void reset() {
+        for (OperationMetrics operation : this.operations) {
+            operation.reset();
+        }
+        this.syncBytes.set(0);
+        this.sinceNanos = System.nanoTime();
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        var position = this.storageController.getLinkedStorageControllerPosition();
+        json.addProperty("dimension", position.getDimensionKey().location().toString());
+        json.addProperty("x", position.getPos().getX());
+        json.addProperty("y", position.getPos().getY());
+        json.addProperty("z", position.getPos().getZ());
+        json.addProperty("usedSlots", this.storageController.getUsedSlots());
+        json.addProperty("maxSlots", this.storageController.getMaxSlots());
+        json.addProperty("totalNanos", this.getTotalNanos());
+        json.addProperty("syncBytes", this.getSyncBytes());
+        json.addProperty("syncBytesPerSecond", this.getSyncBytesPerSecond());
+        json.addProperty("depositQueueDepth", this.getDepositQueueDepth());
+
+        JsonObject operations = new JsonObject();
+        for (Operation operation : Operation.values()) {
+            OperationMetrics metrics = this.get(operation);
+            JsonObject operationJson = new JsonObject();
+            operationJson.addProperty("count", metrics.getCount());
+            operationJson.addProperty("totalNanos", metrics.getTotalNanos());
+            operationJson.addProperty("maxNanos", metrics.getMaxNanos());
+            JsonArray histogram = new JsonArray();
+            for (int i = 0; i < OperationMetrics.BUCKETS; i++) {
+                histogram.add(metrics.getBucket(i));
+            }
+            operationJson.add("histogramMicros", histogram);
+            operations.add(operation.getName(), operationJson);
+        }
+        json.add("operations", operations);
+        return json;
+    }
+
+    public enum Operation {
+        INSERT_STACK("insertStack"),
+        /**
+         * Extraction by comparator, getItemStack and getMostCommonItem.
+         */
+        GET_ITEM_STACK("getItemStack"),
+        /**
+         * Capturing a stack snapshot for the storage gui.
+         */
+        GET_STACKS("getStacks"),
+        /**
+         * Compressing a stack snapshot, runs on a worker thread.
+         */
+        COMPRESS_STACKS("compressStacks"),
+        DEPOSIT_ORDER("depositOrder"),
+        /**
+         * Time a deposit order waited in the queue until a spirit took a trip of it.
+         */
+        DEPOSIT_DISPATCH("depositDispatch", true);
+
+        private final String name;
+        private final boolean waitTime;
+
+        Operation(String name) {
+            this(name, false);
+        }
+
+        Operation(String name, boolean waitTime) {
+            this.name = name;
+            this.waitTime = waitTime;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return true if the operation measures time spent waiting rather than working on the server thread.
+         */
+        public boolean isWaitTime() {
+            return this.waitTime;
+        }
+    }
+
+    /**
+     * Count, total time and a latency histogram of one operation.
+     * Bucket i holds operations that took less than 2^i microseconds, the last bucket everything slower.
+     */
+    public static class OperationMetrics {
+        public static final int BUCKETS = 24;
+
+        protected final AtomicLong count = new AtomicLong();
+        protected final AtomicLong totalNanos = new AtomicLong();
+        protected final AtomicLong maxNanos = new AtomicLong();
+        protected final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        public void record(long nanos) {
+            this.count.incrementAndGet();
+            this.totalNanos.addAndGet(nanos);
+            this.maxNanos.accumulateAndGet(nanos, Math::max);
+            long micros = nanos / 1000;
+            int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+            this.histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        }
+
+        public void reset() {
+            this.count.set(0);
+            this.totalNanos.set(0);
+            this.maxNanos.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                this.histogram.set(i, 0);
+            }
+        }
+
+        public long getCount() {
+            return this.count.get();
+        }
+
+        public long getTotalNanos() {
+            return this.totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return this.maxNanos.get();
+        }
+
+        public long getBucket(int bucket) {
+            return this.histogram.get(bucket);
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 1.
+         * @return the upper bound in microseconds of the bucket the percentile falls into.
+         */
+        public long getPercentileMicros(double percentile) {
+            long count = this.count.get();
+            long threshold = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.histogram.get(i);
+                if (seen >= threshold && seen > 0)
+                    return 1L << i;
+            }
+            return 1L << (BUCKETS - 1);
+        }
+    }
+}
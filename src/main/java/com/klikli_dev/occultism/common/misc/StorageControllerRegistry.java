@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
+import com.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import com.klikli_dev.occultism.util.BlockEntityUtil;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server wide registry of the loaded storage controllers by position, across all dimensions.
+ * Storage controllers register when they are loaded and unregister when they are removed or their chunk unloads, so
+ * looking one up does not need a level, chunk or block entity lookup.
+ */
+public class StorageControllerRegistry {
+
+    /**
+     * Weak, so a controller that misses its removal cannot be kept alive by the registry.
+     */
+    private static final Map<GlobalBlockPos, WeakReference<BlockEntity>> CONTROLLERS = new ConcurrentHashMap<>();
+
+    //region Static Methods
+    public static <T extends BlockEntity & IStorageController> void register(T storageController) {
+        CONTROLLERS.put(storageController.getLinkedStorageControllerPosition(), new WeakReference<>(storageController));
+    }
+
+    public static <T extends BlockEntity & IStorageController> void unregister(T storageController) {
+        //only remove our own entry, a replacement may already have registered at the same position
+        CONTROLLERS.computeIfPresent(storageController.getLinkedStorageControllerPosition(),
+                (pos, reference) -> reference.get() == storageController ? null : reference);
+    }
+
+    /**
+     * Clears the registry, called when the server stops.
+     */
+    public static void clear() {
+        CONTROLLERS.clear();
+    }
+
+    /**
+     * @param pos the position of the storage controller.
+     * @return the loaded storage controller at the given position, or null if there is none.
+     */
+    @Nullable
+    public static IStorageController get(GlobalBlockPos pos) {
+        if (pos == null)
+            return null;
+        WeakReference<BlockEntity> reference = CONTROLLERS.get(pos);
+        BlockEntity blockEntity = reference != null ? reference.get() : null;
+        return blockEntity != null && !blockEntity.isRemoved() ? (IStorageController) blockEntity : null;
+    }
+
+    /**
+     * Gets the storage controller at the given position. The registry only knows server side controllers, on the
+     * client this falls back to a block entity lookup.
+     *
+     * @param level the level to look up from.
+     * @param pos   the position of the storage controller.
+     * @return the loaded storage controller at the given position, or null if there is none.
+     */
+    @Nullable
+    public static IStorageController get(Level level, GlobalBlockPos pos) {
+        if (!level.isClientSide)
+            return get(pos);
+        return BlockEntityUtil.get(level, pos) instanceof IStorageController controller ? controller : null;
+    }
+    //endregion Static Methods
+}
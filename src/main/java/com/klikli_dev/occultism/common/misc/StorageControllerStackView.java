@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.klikli_dev.occultism.api.common.data.SortDirection;
+import com.klikli_dev.occultism.api.common.data.SortType;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.*;
+
+/**
+ * A searchable and sortable view of a storage controller's item index, used to answer page requests of clients in
+ * server side search mode.
+ * <p>
+ * The strings needed for search and sort are built once per item and nbt, not per comparison. The sorted result of the
+ * last query is kept until the contents change, so page flips and several players with the same query share it.
+ * Search follows the client side search syntax: "@" for mod names, "#" for tooltips, "$" for tags, else display names.
+ * Note that on a dedicated server display names and tooltips are resolved in the server language.
+ */
+public class StorageControllerStackView implements StorageControllerItemIndex.Listener {
+
+    /**
+     * The maximum number of stacks a single page may contain.
+     */
+    public static final int MAX_PAGE_SIZE = 256;
+
+    protected final StorageControllerItemIndex index;
+    protected final Map<ItemStackKey, ItemSearchKeys> searchKeys = new HashMap<>();
+
+    protected String cachedQuery;
+    protected SortType cachedSortType;
+    protected SortDirection cachedSortDirection;
+    protected long cachedVersion = -1;
+    protected List<StorageControllerItemIndex.Entry> cachedResult;
+
+    public StorageControllerStackView(StorageControllerItemIndex index) {
+        this.index = index;
+        this.index.addListener(this);
+    }
+
+    /**
+     * Searches and sorts the contents and returns the requested part of the result.
+     *
+     * @param query         the search text, empty to match everything.
+     * @param sortType      the sort type.
+     * @param sortDirection the sort direction.
+     * @param offset        the index of the first stack of the page in the sorted result.
+     * @param count         the number of stacks in the page, limited to {@link #MAX_PAGE_SIZE}.
+     * @return the page.
+     */
+    public Page getPage(String query, SortType sortType, SortDirection sortDirection, int offset, int count) {
+        List<StorageControllerItemIndex.Entry> result = this.getResult(query, sortType, sortDirection);
+
+        int from = Math.max(0, Math.min(offset, result.size()));
+        int to = Math.min(result.size(), from + Math.max(0, Math.min(count, MAX_PAGE_SIZE)));
+        List<ItemStack> stacks = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            StorageControllerItemIndex.Entry entry = result.get(i);
+            stacks.add(entry.getKey().toStack(entry.getTotalCountClamped()));
+        }
+        return new Page(result.size(), from, stacks);
+    }
+
+    protected List<StorageControllerItemIndex.Entry> getResult(String query, SortType sortType, SortDirection sortDirection) {
+        if (this.cachedResult != null && this.cachedVersion == this.index.getVersion() &&
+                sortType == this.cachedSortType && sortDirection == this.cachedSortDirection && query.equals(this.cachedQuery))
+            return this.cachedResult;
+
+        String search = query.toLowerCase();
+        List<StorageControllerItemIndex.Entry> result = new ArrayList<>();
+        for (StorageControllerItemIndex.Entry entry : this.index.getEntries()) {
+            if (search.isEmpty() || this.getSearchKeys(entry.getKey()).matches(search, null))
+                result.add(entry);
+        }
+
+        Comparator<StorageControllerItemIndex.Entry> comparator = switch (sortType) {
+            case AMOUNT -> Comparator.comparingLong(StorageControllerItemIndex.Entry::getTotalCount).reversed();
+            case NAME -> Comparator.comparing(entry -> this.getSearchKeys(entry.getKey()).getName(), String.CASE_INSENSITIVE_ORDER);
+            case MOD -> Comparator.comparing(entry -> this.getSearchKeys(entry.getKey()).getModName(), String.CASE_INSENSITIVE_ORDER);
+        };
+        result.sort(sortDirection.isDown() ? comparator.reversed() : comparator);
+
+        this.cachedQuery = query;
+        this.cachedSortType = sortType;
+        this.cachedSortDirection = sortDirection;
+        this.cachedVersion = this.index.getVersion();
+        this.cachedResult = result;
+        return result;
+    }
+
+    protected ItemSearchKeys getSearchKeys(ItemStackKey key) {
+        return this.searchKeys.computeIfAbsent(key, k -> new ItemSearchKeys(k.getPrototype()));
+    }
+
+    @Override
+    public void onEntryChanged(StorageControllerItemIndex.Entry entry) {
+        //search keys only depend on item and nbt, so only removals matter.
+    }
+
+    @Override
+    public void onEntryRemoved(StorageControllerItemIndex.Entry entry) {
+        this.searchKeys.remove(entry.getKey());
+    }
+
+    @Override
+    public void onIndexRebuilt() {
+        this.searchKeys.keySet().removeIf(key -> this.index.getEntry(key) == null);
+        this.cachedResult = null;
+    }
+
+    public static class Page {
+        protected final int totalCount;
+        protected final int offset;
+        protected final List<ItemStack> stacks;
+
+        public Page(int totalCount, int offset, List<ItemStack> stacks) {
+            this.totalCount = totalCount;
+            this.offset = offset;
+            this.stacks = stacks;
+        }
+
+        public int getTotalCount() {
+            return this.totalCount;
+        }
+
+        public int getOffset() {
+            return this.offset;
+        }
+
+        public List<ItemStack> getStacks() {
+            return this.stacks;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.misc;
+
+import com.klikli_dev.occultism.Occultism;
+import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
+import com.klikli_dev.occultism.api.common.data.SortDirection;
+import com.klikli_dev.occultism.api.common.data.SortType;
+import com.klikli_dev.occultism.network.MessageUpdateStackPage;
+import com.klikli_dev.occultism.network.MessageUpdateStacks;
+import com.klikli_dev.occultism.network.MessageUpdateStacksDelta;
+import com.klikli_dev.occultism.network.OccultismPackets;
+import it.unimi.dsi.fastutil.ints.*;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.ItemStack;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tracks which stacks of a storage controller a single client knows about, and sends only the changes since the last
+ * sync. A full snapshot is sent when the client requests it, or when the changes are too many to be worth a delta.
+ * <p>
+ * Snapshots are shared between all trackers of a controller and may be slightly outdated. Every change carries the
+ * index version it happened at, so after sending a snapshot the tracker follows up with exactly the changes that
+ * happened after the snapshot was captured.
+ * <p>
+ * In server side search mode no stacks are tracked, instead the page the client requested is re-sent whenever the
+ * contents changed.
+ */
+public class StorageControllerSyncTracker implements StorageControllerItemIndex.Listener {
+
+    /**
+     * If more entries changed than this, a full snapshot is sent instead of a delta.
+     */
+    public static final int MAX_DELTA_CHANGES = 512;
+
+    protected IStorageController storageController;
+    protected final Int2ObjectMap<StorageControllerItemIndex.Entry> changedEntries = new Int2ObjectLinkedOpenHashMap<>();
+    protected final Int2LongMap removedIds = new Int2LongOpenHashMap();
+    protected final IntSet knownIds = new IntOpenHashSet();
+    protected boolean needsFullSync = true;
+    protected boolean active;
+    /**
+     * Snapshots captured before this version miss changes this tracker did not record.
+     */
+    protected long minSnapshotVersion;
+    protected CompletableFuture<MessageUpdateStacks> pendingSnapshot;
+    protected int sequence;
+    protected int lastUsedSlots;
+    protected int lastMaxSlots;
+
+    protected IStorageController pageStorageController;
+    protected String pageQuery = "";
+    protected SortType pageSortType = SortType.AMOUNT;
+    protected SortDirection pageSortDirection = SortDirection.DOWN;
+    protected int pageOffset;
+    protected int pageCount;
+    protected boolean pageDirty;
+    protected long lastPageVersion = -1;
+    protected long lastPageTime;
+
+    /**
+     * Sends the pending changes of the given storage controller to the player.
+     * If the storage controller differs from the last call, the tracker re-attaches and sends a full snapshot.
+     * Nothing is sent until the client requested the initial full snapshot, as before that it cannot display it.
+     *
+     * @param player            the player to sync to.
+     * @param storageController the storage controller to sync, may be null if it is not available.
+     * @param fullSync          true to force a full snapshot.
+     */
+    public void sync(ServerPlayer player, @Nullable IStorageController storageController, boolean fullSync) {
+        if (fullSync) {
+            this.active = true;
+            this.needsFullSync = true;
+        }
+        if (!this.active)
+            return;
+
+        if (Occultism.SERVER_CONFIG.storage.serverSideSearch.get()) {
+            this.syncPage(player, storageController, fullSync);
+            return;
+        }
+
+        if (storageController != this.storageController) {
+            this.detach();
+            if (storageController == null)
+                return;
+            this.storageController = storageController;
+            this.storageController.addStacksListener(this);
+            this.minSnapshotVersion = storageController.getStacksVersion();
+        }
+        if (storageController == null)
+            return;
+
+        if (this.changedEntries.size() + this.removedIds.size() > MAX_DELTA_CHANGES)
+            this.needsFullSync = true;
+
+        if (this.needsFullSync) {
+            //while waiting for the snapshot we keep collecting changes, they are sent right after it.
+            if (!this.trySendSnapshot(player))
+                return;
+        }
+
+        this.sendDelta(player);
+    }
+
+    /**
+     * Sets the page the client wants to see in server side search mode. The page is sent on the next sync.
+     *
+     * @param query         the search text.
+     * @param sortType      the sort type.
+     * @param sortDirection the sort direction.
+     * @param offset        the index of the first stack of the page.
+     * @param count         the number of stacks in the page.
+     */
+    public void setPage(String query, SortType sortType, SortDirection sortDirection, int offset, int count) {
+        this.pageQuery = query;
+        this.pageSortType = sortType;
+        this.pageSortDirection = sortDirection;
+        this.pageOffset = offset;
+        this.pageCount = count;
+        this.pageDirty = true;
+        this.active = true;
+    }
+
+    /**
+     * Stops listening to the storage controller. Must be called when the client no longer views it.
+     */
+    public void detach() {
+        if (this.storageController != null)
+            this.storageController.removeStacksListener(this);
+        this.storageController = null;
+        this.needsFullSync = true;
+        this.pendingSnapshot = null;
+        this.changedEntries.clear();
+        this.removedIds.clear();
+    }
+
+    protected void syncPage(ServerPlayer player, @Nullable IStorageController storageController, boolean fullSync) {
+        if (storageController == null)
+            return;
+        if (fullSync || storageController != this.pageStorageController) {
+            this.pageStorageController = storageController;
+            this.pageDirty = true;
+        }
+
+        long time = player.level().getGameTime();
+        if (!this.pageDirty) {
+            if (storageController.getStacksVersion() == this.lastPageVersion)
+                return;
+            //contents changed, refresh the page at most once per interval
+            if (time - this.lastPageTime < Occultism.SERVER_CONFIG.storage.snapshotIntervalTicks.get())
+                return;
+        }
+
+        //until the client requested a page this only tells it the total count, so it switches to paged mode.
+        StorageControllerStackView.Page page = storageController.getStackView()
+                .getPage(this.pageQuery, this.pageSortType, this.pageSortDirection, this.pageOffset, this.pageCount);
+        this.pageDirty = false;
+        this.lastPageVersion = storageController.getStacksVersion();
+        this.lastPageTime = time;
+
+        OccultismPackets.sendTo(player, new MessageUpdateStackPage(page.getTotalCount(), page.getOffset(),
+                page.getStacks(), storageController.getUsedSlots(), storageController.getMaxSlots()));
+    }
+
+    /**
+     * @return true if the snapshot was sent, false if it is not ready yet.
+     */
+    protected boolean trySendSnapshot(ServerPlayer player) {
+        if (this.pendingSnapshot == null) {
+            this.pendingSnapshot = this.storageController.requestMessageUpdateStacks(this.minSnapshotVersion);
+            if (this.pendingSnapshot == null)
+                return false;
+        }
+        if (!this.pendingSnapshot.isDone())
+            return false;
+
+        CompletableFuture<MessageUpdateStacks> snapshot = this.pendingSnapshot;
+        this.pendingSnapshot = null;
+        if (snapshot.isCompletedExceptionally()) {
+            Occultism.LOGGER.error("Failed to build storage controller snapshot, retrying.");
+            return false;
+        }
+
+        MessageUpdateStacks message = snapshot.join();
+        //the index was rebuilt while we waited, so we need a newer snapshot.
+        if (message.getVersion() < this.minSnapshotVersion)
+            return false;
+
+        this.knownIds.clear();
+        this.knownIds.addAll(IntArrayList.wrap(message.getIds()));
+        //keep only the changes that happened after the snapshot was captured
+        this.changedEntries.values().removeIf(entry -> entry.getVersion() <= message.getVersion());
+        this.removedIds.values().removeIf(version -> version <= message.getVersion());
+        this.needsFullSync = false;
+        this.sequence = 0;
+        this.lastUsedSlots = message.getUsedSlots();
+        this.lastMaxSlots = message.getMaxSlots();
+
+        OccultismPackets.sendTo(player, message);
+        this.storageController.getMetrics().addSyncBytes(message.getCompressedSize());
+        return true;
+    }
+
+    protected void sendDelta(ServerPlayer player) {
+        int usedSlots = this.storageController.getUsedSlots();
+        int maxSlots = this.storageController.getMaxSlots();
+        if (this.changedEntries.isEmpty() && this.removedIds.isEmpty() &&
+                usedSlots == this.lastUsedSlots && maxSlots == this.lastMaxSlots)
+            return;
+
+        Int2ObjectMap<ItemStack> addedStacks = new Int2ObjectLinkedOpenHashMap<>();
+        Int2IntMap changedCounts = new Int2IntOpenHashMap();
+        for (StorageControllerItemIndex.Entry entry : this.changedEntries.values()) {
+            //the client only needs the full stack for items it has not seen yet.
+            if (this.knownIds.add(entry.getId()))
+                addedStacks.put(entry.getId(), entry.getKey().toStack(entry.getTotalCountClamped()));
+            else
+                changedCounts.put(entry.getId(), entry.getTotalCountClamped());
+        }
+        IntList removed = new IntArrayList();
+        for (int id : this.removedIds.keySet()) {
+            if (this.knownIds.remove(id))
+                removed.add(id);
+        }
+
+        this.changedEntries.clear();
+        this.removedIds.clear();
+        this.lastUsedSlots = usedSlots;
+        this.lastMaxSlots = maxSlots;
+
+        OccultismPackets.sendTo(player, new MessageUpdateStacksDelta(++this.sequence, usedSlots, maxSlots,
+                addedStacks, changedCounts, removed));
+    }
+
+    @Override
+    public void onEntryChanged(StorageControllerItemIndex.Entry entry) {
+        this.changedEntries.put(entry.getId(), entry);
+        this.removedIds.remove(entry.getId());
+    }
+
+    @Override
+    public void onEntryRemoved(StorageControllerItemIndex.Entry entry) {
+        this.changedEntries.remove(entry.getId());
+        this.removedIds.put(entry.getId(), entry.getVersion());
+    }
+
+    @Override
+    public void onIndexRebuilt() {
+        //recorded entries are stale now, only a snapshot taken after the rebuild is reliable.
+        this.changedEntries.clear();
+        this.removedIds.clear();
+        this.needsFullSync = true;
+        this.minSnapshotVersion = this.storageController.getStacksVersion();
+    }
+}
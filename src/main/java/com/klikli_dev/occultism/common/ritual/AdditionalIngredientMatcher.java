@@ -0,0 +1,299 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.ritual;
+
+import com.klikli_dev.occultism.common.blockentity.SacrificialBowlBlockEntity;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.crafting.Ingredient;
+
+import java.util.*;
+
+/**
+ * Matches the additional ingredients of a ritual against the items on sacrificial bowls.
+ * Does not depend on the level or config, so it can be used and measured on its own.
+ * <p>
+ * Every ingredient is assigned a different item by maximum bipartite matching, so overlapping ingredients, such as a
+ * tag and an item in that tag, are matched no matter in which order the items are found.
+ * Simple ingredients only depend on the item, they are resolved once to a set of item ids, see {@link #resolve(Ingredient)}.
+ * Other ingredients are tested directly. Empty items never match.
+ * Matching reuses per thread buffers and does not allocate.
+ */
+public class AdditionalIngredientMatcher {
+
+    private static final Map<Ingredient, ResolvedIngredient> RESOLVED = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    //region Static Methods
+
+    /**
+     * Checks if every ingredient can be matched by a different item. Additional items are ignored.
+     *
+     * @param additionalIngredients the ingredients to match.
+     * @param items                 the available items.
+     * @return true if all ingredients are matched.
+     */
+    public static boolean matches(List<Ingredient> additionalIngredients, List<ItemStack> items) {
+        if (additionalIngredients.isEmpty())
+            return true; //nothing to check.
+        if (additionalIngredients.size() > items.size())
+            return false; //every ingredient needs its own item.
+
+        //more items need not cause failure, otherwise we cannot properly identify the type of ritual.
+        return match(additionalIngredients, loadItems(items)) == additionalIngredients.size();
+    }
+
+    /**
+     * Checks if every ingredient can be matched by the item on a different sacrificial bowl.
+     * Reads the bowls directly, so unlike {@link #matches(List, List)} no item list needs to be built.
+     *
+     * @param additionalIngredients the ingredients to match.
+     * @param sacrificialBowls      the sacrificial bowls holding the available items.
+     * @return true if all ingredients are matched.
+     */
+    public static boolean matchesBowls(List<Ingredient> additionalIngredients,
+                                       List<SacrificialBowlBlockEntity> sacrificialBowls) {
+        if (additionalIngredients.isEmpty())
+            return true;
+        if (additionalIngredients.size() > sacrificialBowls.size())
+            return false;
+
+        return matchBowls(additionalIngredients, sacrificialBowls) == additionalIngredients.size();
+    }
+
+    /**
+     * Assigns as many ingredients as possible to the item on a different sacrificial bowl.
+     * The assignment can be read with {@link #getMatchedBowl(int)} until the next match on this thread.
+     *
+     * @param additionalIngredients the ingredients to match.
+     * @param sacrificialBowls      the sacrificial bowls holding the available items.
+     * @return the number of matched ingredients.
+     */
+    public static int matchBowls(List<Ingredient> additionalIngredients,
+                                 List<SacrificialBowlBlockEntity> sacrificialBowls) {
+        return match(additionalIngredients, loadBowls(sacrificialBowls));
+    }
+
+    /**
+     * Gets the bowl assigned to an ingredient by the last {@link #matchBowls(List, List)} on this thread.
+     *
+     * @param ingredient the index of the ingredient.
+     * @return the index of the sacrificial bowl, or -1 if the ingredient is not matched.
+     */
+    public static int getMatchedBowl(int ingredient) {
+        return SCRATCH.get().itemOfIngredient[ingredient];
+    }
+
+    /**
+     * Gets the ingredients that are left over after assigning as many ingredients as possible to a different item.
+     *
+     * @param additionalIngredients the ingredients to match.
+     * @param items                 the available items.
+     * @return the ingredients not matched by any item.
+     */
+    public static List<Ingredient> getUnmatched(List<Ingredient> additionalIngredients, List<ItemStack> items) {
+        List<Ingredient> unmatched = new ArrayList<>();
+        if (additionalIngredients.isEmpty())
+            return unmatched;
+
+        match(additionalIngredients, loadItems(items));
+        Scratch scratch = SCRATCH.get();
+        for (int ingredient = 0; ingredient < additionalIngredients.size(); ingredient++) {
+            if (scratch.itemOfIngredient[ingredient] < 0)
+                unmatched.add(additionalIngredients.get(ingredient));
+        }
+        return unmatched;
+    }
+
+    /**
+     * Resolves the ingredient to the ids of the items it accepts, cached until {@link #invalidate()}.
+     * Called for all ritual ingredients when recipes are loaded, otherwise on first use.
+     */
+    public static ResolvedIngredient resolve(Ingredient ingredient) {
+        ResolvedIngredient resolved = RESOLVED.get(ingredient);
+        if (resolved == null) {
+            resolved = new ResolvedIngredient(ingredient);
+            RESOLVED.put(ingredient, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Clears the resolved ingredients, needs to be called if tags change.
+     */
+    public static void invalidate() {
+        RESOLVED.clear();
+    }
+
+    /**
+     * Copies the items into the scratch buffers of the current thread.
+     *
+     * @return the number of items.
+     */
+    protected static int loadItems(List<ItemStack> items) {
+        Scratch scratch = SCRATCH.get();
+        int itemCount = items.size();
+        scratch.ensureItemCapacity(itemCount);
+        for (int item = 0; item < itemCount; item++) {
+            scratch.stacks[item] = items.get(item);
+        }
+        return itemCount;
+    }
+
+    /**
+     * Copies the items on the sacrificial bowls into the scratch buffers of the current thread, one item per bowl.
+     *
+     * @return the number of items.
+     */
+    protected static int loadBowls(List<SacrificialBowlBlockEntity> sacrificialBowls) {
+        Scratch scratch = SCRATCH.get();
+        int itemCount = sacrificialBowls.size();
+        scratch.ensureItemCapacity(itemCount);
+        for (int item = 0; item < itemCount; item++) {
+            scratch.stacks[item] = sacrificialBowls.get(item).itemStackHandler.getStackInSlot(0);
+        }
+        return itemCount;
+    }
+
+    /**
+     * Computes a maximum matching of ingredients to the loaded items into the scratch buffers of the current thread.
+     *
+     * @return the number of matched ingredients.
+     */
+    protected static int match(List<Ingredient> additionalIngredients, int itemCount) {
+        Scratch scratch = SCRATCH.get();
+        int ingredientCount = additionalIngredients.size();
+        scratch.ensureIngredientCapacity(ingredientCount);
+
+        for (int item = 0; item < itemCount; item++) {
+            scratch.itemIds[item] = BuiltInRegistries.ITEM.getId(scratch.stacks[item].getItem());
+            scratch.ingredientOfItem[item] = -1;
+        }
+        for (int ingredient = 0; ingredient < ingredientCount; ingredient++) {
+            scratch.ingredients[ingredient] = resolve(additionalIngredients.get(ingredient));
+            scratch.itemOfIngredient[ingredient] = -1;
+        }
+
+        int matched = 0;
+        for (int ingredient = 0; ingredient < ingredientCount; ingredient++) {
+            //a new stamp marks all items as unvisited without clearing the array
+            scratch.stamp++;
+            if (scratch.stamp == 0) {
+                Arrays.fill(scratch.visited, 0);
+                scratch.stamp = 1;
+            }
+            if (augment(scratch, additionalIngredients, itemCount, ingredient))
+                matched++;
+        }
+
+        Arrays.fill(scratch.ingredients, 0, ingredientCount, null);
+        Arrays.fill(scratch.stacks, 0, itemCount, null);
+        return matched;
+    }
+
+    /**
+     * Tries to assign an item to the ingredient, moving previously assigned ingredients to other items if needed.
+     * Recursion depth is bounded by the number of ingredients.
+     */
+    protected static boolean augment(Scratch scratch, List<Ingredient> additionalIngredients, int itemCount,
+                                     int ingredient) {
+        ResolvedIngredient resolved = scratch.ingredients[ingredient];
+        for (int item = 0; item < itemCount; item++) {
+            ItemStack stack = scratch.stacks[item];
+            if (scratch.visited[item] == scratch.stamp || stack.isEmpty() ||
+                    !resolved.test(additionalIngredients.get(ingredient), scratch.itemIds[item], stack))
+                continue;
+            scratch.visited[item] = scratch.stamp;
+
+            int previous = scratch.ingredientOfItem[item];
+            if (previous < 0 || augment(scratch, additionalIngredients, itemCount, previous)) {
+                scratch.ingredientOfItem[item] = ingredient;
+                scratch.itemOfIngredient[ingredient] = item;
+                return true;
+            }
+        }
+        return false;
+    }
+    //endregion Static Methods
+
+    /**
+     * The ids of the items an ingredient accepts.
+     * Does not reference the ingredient, so the cache entry can be collected together with it.
+     */
+    public static class ResolvedIngredient {
+        protected final BitSet itemIds = new BitSet();
+        /**
+         * True if the ingredient only depends on the item, then the item ids are sufficient to test it.
+         */
+        protected final boolean itemOnly;
+
+        protected ResolvedIngredient(Ingredient ingredient) {
+            this.itemOnly = ingredient.isSimple();
+            for (ItemStack stack : ingredient.getItems()) {
+                this.itemIds.set(BuiltInRegistries.ITEM.getId(stack.getItem()));
+            }
+        }
+
+        /**
+         * @param ingredient the ingredient this was resolved from.
+         * @param itemId     the registry id of the stack's item.
+         * @param stack      the stack to test.
+         * @return true if the ingredient accepts the stack.
+         */
+        public boolean test(Ingredient ingredient, int itemId, ItemStack stack) {
+            if (this.itemOnly)
+                return this.itemIds.get(itemId);
+            return ingredient.test(stack);
+        }
+    }
+
+    /**
+     * Per thread buffers, grown as needed and reused by all matches.
+     */
+    protected static class Scratch {
+        protected ResolvedIngredient[] ingredients = new ResolvedIngredient[16];
+        protected int[] itemOfIngredient = new int[16];
+        protected ItemStack[] stacks = new ItemStack[32];
+        protected int[] itemIds = new int[32];
+        protected int[] ingredientOfItem = new int[32];
+        protected int[] visited = new int[32];
+        protected int stamp;
+
+        protected void ensureIngredientCapacity(int ingredientCount) {
+            if (this.ingredients.length < ingredientCount) {
+                this.ingredients = new ResolvedIngredient[ingredientCount];
+                this.itemOfIngredient = new int[ingredientCount];
+            }
+        }
+
+        protected void ensureItemCapacity(int itemCount) {
+            if (this.stacks.length < itemCount) {
+                this.stacks = new ItemStack[itemCount];
+                this.itemIds = new int[itemCount];
+                this.ingredientOfItem = new int[itemCount];
+                this.visited = new int[itemCount];
+                this.stamp = 0;
+            }
+        }
+    }
+}
@@ -29,6 +29,7 @@ import com.klikli_dev.occultism.crafting.recipe.RitualRecipe;
 import com.klikli_dev.occultism.registry.OccultismAdvancements;
 import com.klikli_dev.occultism.registry.OccultismSounds;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.particles.ParticleTypes;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
@@ -43,13 +44,14 @@ import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.crafting.Ingredient;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
 
 public abstract class Ritual {
 
@@ -91,21 +93,8 @@ public abstract class Ritual {
      * @return the remaining additional ingredients that still need to be consumed.
      */
     public static List<Ingredient> getRemainingAdditionalIngredients(List<Ingredient> additionalIngredients, List<ItemStack> consumedIngredients) {
-        //copy the consumed ingredients to not modify the input
-        List<ItemStack> consumedIngredientsCopy = new ArrayList<>(consumedIngredients);
-        List<Ingredient> remainingAdditionalIngredients = new ArrayList<>();
-        for (Ingredient ingredient : additionalIngredients) {
-            Optional<ItemStack> matchedStack = consumedIngredientsCopy.stream().filter(ingredient::test).findFirst();
-            if (matchedStack.isPresent()) {
-                //if it is in the consumed ingredients, we do not need to add it to the remaining required ones
-                //but we remove it from our consumed ingredients copy so each provided ingredient an only be simulated consumed once
-                consumedIngredientsCopy.remove(matchedStack.get());
-            } else {
-                //if it is not already consumed, we add it to the remaining additional ingredients.
-                remainingAdditionalIngredients.add(ingredient);
-            }
-        }
-        return remainingAdditionalIngredients;
+        //each consumed item fulfilled exactly one ingredient, the same matching as for consumption tells us which
+        return AdditionalIngredientMatcher.getUnmatched(additionalIngredients, consumedIngredients);
     }
 
     public ResourceLocation getFactoryID() {
@@ -301,12 +290,16 @@ public abstract class Ritual {
             return true;
 
         List<SacrificialBowlBlockEntity> sacrificialBowls = this.getSacrificialBowls(level, goldenBowlPosition);
+        //take each ingredient from the bowl the validity check matched it to,
+        //otherwise overlapping ingredients could use up each other's items
+        AdditionalIngredientMatcher.matchBowls(remainingAdditionalIngredients, sacrificialBowls);
         int consumed = 0;
         for (Iterator<Ingredient> it = remainingAdditionalIngredients.iterator();
              it.hasNext() && consumed < ingredientsToConsume; consumed++) {
             Ingredient ingredient = it.next();
-            if (this.consumeAdditionalIngredient(level, goldenBowlPosition, sacrificialBowls, ingredient,
-                    consumedIngredients)) {
+            int bowl = AdditionalIngredientMatcher.getMatchedBowl(consumed);
+            if (bowl >= 0 && this.consumeAdditionalIngredient(level, goldenBowlPosition, sacrificialBowls.get(bowl),
+                    ingredient, consumedIngredients)) {
                 //remove from the remaining required ingredients
                 it.remove();
             } else {
@@ -331,32 +324,48 @@ public abstract class Ritual {
                                                List<SacrificialBowlBlockEntity> sacrificialBowls,
                                                Ingredient ingredient, List<ItemStack> consumedIngredients) {
         for (SacrificialBowlBlockEntity sacrificialBowl : sacrificialBowls) {
-            //first simulate removal to check the ingredient
-            if (sacrificialBowl.lazyItemStackHandler.map(handler -> {
-                ItemStack stack = handler.extractItem(0, 1, true);
-                if (ingredient.test(stack)) {
-                    //now take for real
-                    ItemStack extracted = handler.extractItem(0, 1, false);
-                    consumedIngredients.add(extracted);
-                    //Show effect in level
-                    ((ServerLevel) level)
-                            .sendParticles(ParticleTypes.LARGE_SMOKE, sacrificialBowl.getBlockPos().getX() + 0.5,
-                                    sacrificialBowl.getBlockPos().getY() + 1.5, sacrificialBowl.getBlockPos().getZ() + 0.5, 1,
-                                    0.0, 0.0, 0.0,
-                                    0.0);
-
-                    level.playSound(null, sacrificialBowl.getBlockPos(), OccultismSounds.POOF.get(), SoundSource.BLOCKS,
-                            0.7f, 0.7f);
-                    return true;
-                }
-                return false;
-            }).orElse(false))
+            if (this.consumeAdditionalIngredient(level, goldenBowlPosition, sacrificialBowl, ingredient,
+                    consumedIngredients))
                 return true;
-
         }
         return false;
     }
 
+    /**
+     * Consumes one ingredient from the given sacrificial bowl.
+     *
+     * @param level               the level.
+     * @param goldenBowlPosition  the position of the golden bowl.
+     * @param sacrificialBowl     the sacrificial bowl to consume from.
+     * @param ingredient          the ingredient to consume.
+     * @param consumedIngredients the list of already consumed ingredients, newly consumd ingredients will be appended
+     * @return true if the bowl held the ingredient and it was consumed.
+     */
+    public boolean consumeAdditionalIngredient(Level level, BlockPos goldenBowlPosition,
+                                               SacrificialBowlBlockEntity sacrificialBowl,
+                                               Ingredient ingredient, List<ItemStack> consumedIngredients) {
+        //first simulate removal to check the ingredient
+        return sacrificialBowl.lazyItemStackHandler.map(handler -> {
+            ItemStack stack = handler.extractItem(0, 1, true);
+            if (ingredient.test(stack)) {
+                //now take for real
+                ItemStack extracted = handler.extractItem(0, 1, false);
+                consumedIngredients.add(extracted);
+                //Show effect in level
+                ((ServerLevel) level)
+                        .sendParticles(ParticleTypes.LARGE_SMOKE, sacrificialBowl.getBlockPos().getX() + 0.5,
+                                sacrificialBowl.getBlockPos().getY() + 1.5, sacrificialBowl.getBlockPos().getZ() + 0.5, 1,
+                                0.0, 0.0, 0.0,
+                                0.0);
+
+                level.playSound(null, sacrificialBowl.getBlockPos(), OccultismSounds.POOF.get(), SoundSource.BLOCKS,
+                        0.7f, 0.7f);
+                return true;
+            }
+            return false;
+        }).orElse(false);
+    }
+
     /**
      * Compares the items on sacrificial bowls in range to the additional ingredients.
      *
@@ -366,8 +375,30 @@ public abstract class Ritual {
      */
     public boolean areAdditionalIngredientsFulfilled(Level level, BlockPos goldenBowlPosition,
                                                      List<Ingredient> additionalIngredients) {
-        return this.matchesAdditionalIngredients(additionalIngredients,
-                this.getItemsOnSacrificialBowls(level, goldenBowlPosition));
+        List<SacrificialBowlBlockEntity> sacrificialBowls = this.getSacrificialBowls(level, goldenBowlPosition);
+
+        //optional performance improvement to speed up matching at the cost of convenience
+        if (Occultism.SERVER_CONFIG.rituals.enableRemainingIngredientCountMatching.get() &&
+                additionalIngredients.size() != countItems(sacrificialBowls))
+            return false; //if we have different sizes, it cannot be right
+
+        //reads the bowls directly, this runs every tick of a ritual
+        return AdditionalIngredientMatcher.matchesBowls(additionalIngredients, sacrificialBowls);
+    }
+
+    /**
+     * Counts the sacrificial bowls that hold an item.
+     *
+     * @param sacrificialBowls the sacrificial bowls.
+     * @return the number of items on the bowls.
+     */
+    protected static int countItems(List<SacrificialBowlBlockEntity> sacrificialBowls) {
+        int count = 0;
+        for (int i = 0; i < sacrificialBowls.size(); i++) {
+            if (!sacrificialBowls.get(i).itemStackHandler.getStackInSlot(0).isEmpty())
+                count++;
+        }
+        return count;
     }
 
     /**
@@ -383,31 +414,7 @@ public abstract class Ritual {
                 additionalIngredients.size() != items.size())
             return false; //if we have different sizes, it cannot be right
 
-        if (additionalIngredients.isEmpty())
-            return true; //implies both are empty, so nothing to check.
-
-        //create a copy to avoid modifying the original
-        List<ItemStack> remainingItems = new ArrayList<>(items);
-
-        for (Ingredient ingredient : additionalIngredients) {
-            boolean isMatched = false;
-            //go through the remaining items
-            for (int i = 0; i < remainingItems.size(); i++) {
-                ItemStack stack = remainingItems.get(i);
-                //check if ingredient matches
-                if (ingredient.test(stack)) {
-                    isMatched = true;
-                    remainingItems.remove(i); //prevent double dipping :)
-                    break;
-                }
-            }
-            if (!isMatched)
-                return false;
-        }
-
-        //more items need to cause failure, otherwise we cannot properly identify the type of ritual.
-        //return remainingItems.size() == 0;
-        return true;
+        return AdditionalIngredientMatcher.matches(additionalIngredients, items);
     }
 
     /**
@@ -433,14 +440,51 @@ public abstract class Ritual {
         return result;
     }
 
+    /**
+     * Gets the area this ritual depends on: its pentacle in any rotation and the sacrificial bowls in range.
+     *
+     * @param goldenBowlPosition the block position of the golden bowl.
+     * @return the bounding box of the area.
+     */
+    public BoundingBox getFootprint(BlockPos goldenBowlPosition) {
+        var size = this.recipe.getPentacle().getSize();
+        var offset = this.recipe.getPentacle().getOffset();
+
+        //the pentacle may be rotated, so we use the larger horizontal size on both axes
+        int range = Math.max(SACRIFICIAL_BOWL_RANGE, Math.max(size.getX(), size.getZ()));
+        //one layer beyond the pentacle, same as the sacrificial bowl search
+        int yRangeTop = size.getY() - offset.getY();
+        int yRangeBottom = offset.getY() + 1;
+        return new BoundingBox(
+                goldenBowlPosition.getX() - range, goldenBowlPosition.getY() - yRangeBottom, goldenBowlPosition.getZ() - range,
+                goldenBowlPosition.getX() + range, goldenBowlPosition.getY() + yRangeTop, goldenBowlPosition.getZ() + range);
+    }
+
     /**
      * Gets all sacrificial bowls in range of this ritual's golden bowl.
+     * While this ritual runs on the golden bowl the bowls are cached there, see
+     * {@link GoldenSacrificialBowlBlockEntity#getSacrificialBowls()}.
      *
      * @param level              the level.
      * @param goldenBowlPosition the block position of the golden bowl.
      * @return a list of sacrificial bowls.
      */
     public List<SacrificialBowlBlockEntity> getSacrificialBowls(Level level, BlockPos goldenBowlPosition) {
+        if (level.getBlockEntity(goldenBowlPosition) instanceof GoldenSacrificialBowlBlockEntity goldenBowl &&
+                goldenBowl.getRitualFootprint() != null && goldenBowl.getCurrentRitualRecipe() == this.recipe)
+            return goldenBowl.getSacrificialBowls();
+        return this.findSacrificialBowls(level, goldenBowlPosition);
+    }
+
+    /**
+     * Finds all sacrificial bowls in range of this ritual's golden bowl by walking the block entities of the chunks in
+     * range.
+     *
+     * @param level              the level.
+     * @param goldenBowlPosition the block position of the golden bowl.
+     * @return a list of sacrificial bowls.
+     */
+    public List<SacrificialBowlBlockEntity> findSacrificialBowls(Level level, BlockPos goldenBowlPosition) {
 
         var pentacle = this.recipe.getPentacle();
         var offset = pentacle.getOffset();
@@ -454,17 +498,26 @@ public abstract class Ritual {
         yBowlRangeTop++;
         yBowlRangeBottom++;
 
-        List<SacrificialBowlBlockEntity> result = new ArrayList<>();
-        Iterable<BlockPos> blocksToCheck = BlockPos.betweenClosed(
+        BoundingBox range = BoundingBox.fromCorners(
                 goldenBowlPosition.offset(-SACRIFICIAL_BOWL_RANGE, -yBowlRangeBottom, -SACRIFICIAL_BOWL_RANGE),
                 goldenBowlPosition.offset(SACRIFICIAL_BOWL_RANGE, yBowlRangeTop, SACRIFICIAL_BOWL_RANGE));
-        for (BlockPos blockToCheck : blocksToCheck) {
-            BlockEntity blockEntity = level.getBlockEntity(blockToCheck);
-            if (blockEntity instanceof SacrificialBowlBlockEntity &&
-                    !(blockEntity instanceof GoldenSacrificialBowlBlockEntity)) {
-                result.add((SacrificialBowlBlockEntity) blockEntity);
+
+        List<SacrificialBowlBlockEntity> result = new ArrayList<>();
+        for (int chunkX = SectionPos.blockToSectionCoord(range.minX()); chunkX <= SectionPos.blockToSectionCoord(range.maxX()); chunkX++) {
+            for (int chunkZ = SectionPos.blockToSectionCoord(range.minZ()); chunkZ <= SectionPos.blockToSectionCoord(range.maxZ()); chunkZ++) {
+                for (BlockEntity blockEntity : level.getChunk(chunkX, chunkZ).getBlockEntities().values()) {
+                    if (blockEntity instanceof SacrificialBowlBlockEntity sacrificialBowl &&
+                            !(blockEntity instanceof GoldenSacrificialBowlBlockEntity) &&
+                            range.isInside(blockEntity.getBlockPos())) {
+                        result.add(sacrificialBowl);
+                    }
+                }
             }
         }
+        //keep the order of a scan through the volume, so the same bowls are consumed first
+        result.sort(Comparator.<SacrificialBowlBlockEntity>comparingInt(bowl -> bowl.getBlockPos().getZ())
+                .thenComparingInt(bowl -> bowl.getBlockPos().getY())
+                .thenComparingInt(bowl -> bowl.getBlockPos().getX()));
         return result;
     }
 
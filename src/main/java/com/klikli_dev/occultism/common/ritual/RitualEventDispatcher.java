@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.ritual;
+
+import com.klikli_dev.occultism.common.blockentity.GoldenSacrificialBowlBlockEntity;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.event.entity.living.LivingDeathEvent;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent;
+
+import java.util.*;
+
+/**
+ * Server side registry of the golden bowls with a running ritual by chunk section.
+ * Sacrifices and item uses are only passed to the bowls in sections within detection range of the event, instead of
+ * every running ritual listening to every event.
+ */
+public class RitualEventDispatcher {
+
+    private static final Map<ResourceKey<Level>, Long2ObjectMap<Set<GoldenSacrificialBowlBlockEntity>>> SECTIONS = new HashMap<>();
+
+    //region Static Methods
+    public static void register(GoldenSacrificialBowlBlockEntity goldenBowl) {
+        if (goldenBowl.getLevel().isClientSide)
+            return;
+        SECTIONS.computeIfAbsent(goldenBowl.getLevel().dimension(), dimension -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(SectionPos.asLong(goldenBowl.getBlockPos()), section -> new HashSet<>())
+                .add(goldenBowl);
+    }
+
+    public static void unregister(GoldenSacrificialBowlBlockEntity goldenBowl) {
+        if (goldenBowl.getLevel() == null)
+            return;
+        Long2ObjectMap<Set<GoldenSacrificialBowlBlockEntity>> sections = SECTIONS.get(goldenBowl.getLevel().dimension());
+        if (sections == null)
+            return;
+        long section = SectionPos.asLong(goldenBowl.getBlockPos());
+        Set<GoldenSacrificialBowlBlockEntity> goldenBowls = sections.get(section);
+        if (goldenBowls != null && goldenBowls.remove(goldenBowl) && goldenBowls.isEmpty()) {
+            sections.remove(section);
+            if (sections.isEmpty())
+                SECTIONS.remove(goldenBowl.getLevel().dimension());
+        }
+    }
+
+    /**
+     * Clears all registered golden bowls, called when the server stops.
+     */
+    public static void clear() {
+        SECTIONS.clear();
+    }
+
+    public static void onLivingDeath(LivingDeathEvent event) {
+        LivingEntity entity = event.getEntity();
+        //only player kills count as sacrifice
+        if (SECTIONS.isEmpty() || entity.level().isClientSide || !(event.getSource().getEntity() instanceof Player))
+            return;
+
+        for (GoldenSacrificialBowlBlockEntity goldenBowl : getInRange(entity.level(), entity.blockPosition(),
+                Ritual.SACRIFICE_DETECTION_RANGE)) {
+            goldenBowl.onLivingDeath(event);
+        }
+    }
+
+    public static void onPlayerRightClickItem(PlayerInteractEvent.RightClickItem event) {
+        if (SECTIONS.isEmpty() || event.getLevel().isClientSide)
+            return;
+
+        for (GoldenSacrificialBowlBlockEntity goldenBowl : getInRange(event.getLevel(), event.getPos(),
+                Ritual.ITEM_USE_DETECTION_RANGE)) {
+            goldenBowl.onPlayerRightClickItem(event);
+        }
+    }
+
+    /**
+     * @return the golden bowls in the sections touched by a cube of the given range around the position. The bowls
+     * check the exact distance themselves.
+     */
+    protected static List<GoldenSacrificialBowlBlockEntity> getInRange(Level level, BlockPos pos, int range) {
+        Long2ObjectMap<Set<GoldenSacrificialBowlBlockEntity>> sections = SECTIONS.get(level.dimension());
+        if (sections == null)
+            return Collections.emptyList();
+
+        //collect first, handling the event may stop the ritual
+        List<GoldenSacrificialBowlBlockEntity> result = new ArrayList<>();
+        for (int x = SectionPos.blockToSectionCoord(pos.getX() - range); x <= SectionPos.blockToSectionCoord(pos.getX() + range); x++) {
+            for (int y = SectionPos.blockToSectionCoord(pos.getY() - range); y <= SectionPos.blockToSectionCoord(pos.getY() + range); y++) {
+                for (int z = SectionPos.blockToSectionCoord(pos.getZ() - range); z <= SectionPos.blockToSectionCoord(pos.getZ() + range); z++) {
+                    Set<GoldenSacrificialBowlBlockEntity> goldenBowls = sections.get(SectionPos.asLong(x, y, z));
+                    if (goldenBowls != null)
+                        result.addAll(goldenBowls);
+                }
+            }
+        }
+        return result;
+    }
+    //endregion Static Methods
+}
@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.common.ritual;
+
+import com.klikli_dev.occultism.common.blockentity.GoldenSacrificialBowlBlockEntity;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LevelAccessor;
+
+import java.util.*;
+
+/**
+ * Server side registry of the golden bowls with a running ritual and the area their ritual depends on.
+ * Block changes reported inside that area mark the ritual for re-validation, so running rituals do not need to check
+ * their pentacle every tick.
+ */
+public class RitualFootprintTracker {
+
+    private static final Map<ResourceKey<Level>, Set<GoldenSacrificialBowlBlockEntity>> WATCHED = new HashMap<>();
+
+    //region Static Methods
+    public static void watch(GoldenSacrificialBowlBlockEntity goldenBowl) {
+        WATCHED.computeIfAbsent(goldenBowl.getLevel().dimension(), dimension -> new HashSet<>()).add(goldenBowl);
+    }
+
+    public static void unwatch(GoldenSacrificialBowlBlockEntity goldenBowl) {
+        if (goldenBowl.getLevel() == null)
+            return;
+        Set<GoldenSacrificialBowlBlockEntity> goldenBowls = WATCHED.get(goldenBowl.getLevel().dimension());
+        if (goldenBowls != null) {
+            goldenBowls.remove(goldenBowl);
+            if (goldenBowls.isEmpty())
+                WATCHED.remove(goldenBowl.getLevel().dimension());
+        }
+    }
+
+    /**
+     * Clears all watched golden bowls, called when the server stops.
+     */
+    public static void clear() {
+        WATCHED.clear();
+    }
+
+    /**
+     * Marks the rituals whose footprint contains the given position for re-validation.
+     *
+     * @param levelAccessor the level the change happened in.
+     * @param pos           the changed position.
+     */
+    public static void onBlockChanged(LevelAccessor levelAccessor, BlockPos pos) {
+        if (WATCHED.isEmpty() || levelAccessor.isClientSide() || !(levelAccessor instanceof Level level))
+            return;
+
+        Set<GoldenSacrificialBowlBlockEntity> goldenBowls = WATCHED.get(level.dimension());
+        if (goldenBowls == null)
+            return;
+
+        for (GoldenSacrificialBowlBlockEntity goldenBowl : goldenBowls) {
+            //the golden bowl notifies its own neighbours while the ritual runs, that does not change the pentacle
+            if (!goldenBowl.getBlockPos().equals(pos) && goldenBowl.getRitualFootprint().isInside(pos))
+                goldenBowl.invalidateRitual();
+        }
+    }
+
+    /**
+     * Drops the cached sacrificial bowls of the rituals whose footprint contains the given position.
+     *
+     * @param levelAccessor the level the sacrificial bowl was added to or removed from.
+     * @param pos           the position of the sacrificial bowl.
+     */
+    public static void onSacrificialBowlAddedOrRemoved(LevelAccessor levelAccessor, BlockPos pos) {
+        if (WATCHED.isEmpty() || levelAccessor == null || levelAccessor.isClientSide() || !(levelAccessor instanceof Level level))
+            return;
+
+        Set<GoldenSacrificialBowlBlockEntity> goldenBowls = WATCHED.get(level.dimension());
+        if (goldenBowls == null)
+            return;
+
+        for (GoldenSacrificialBowlBlockEntity goldenBowl : goldenBowls) {
+            if (!goldenBowl.getBlockPos().equals(pos) && goldenBowl.getRitualFootprint().isInside(pos))
+                goldenBowl.invalidateSacrificialBowls();
+        }
+    }
+    //endregion Static Methods
+}
@@ -256,6 +256,9 @@ public class OccultismServerConfig {
         public final ConfigValue<Integer> controllerStackSize;
         public final BooleanValue overrideItemStackSizes;
         public final BooleanValue unlinkWormholeOnBreak;
+        public final ConfigValue<Integer> snapshotIntervalTicks;
+        public final BooleanValue serverSideSearch;
+        public final BooleanValue virtualSlotItemHandler;
 
         public StorageSettings(ForgeConfigSpec.Builder builder) {
             builder.comment("Storage Settings").push("storage");
@@ -289,6 +292,24 @@ public class OccultismServerConfig {
                                             "item type (such as 16 for ender pearls, 64 for iron ingot). WARNING: Setting this to " +
                                             "false may have a negative impact on performance.")
                             .define("unlinkWormholeOnBreak", false);
+            this.snapshotIntervalTicks =
+                    builder.comment(
+                                    "The minimum amount of ticks between two full snapshots of a storage actuator's contents " +
+                                            "sent to players. Players that need a snapshot in between share the most recent one.")
+                            .defineInRange("snapshotIntervalTicks", 1, 1, Integer.MAX_VALUE);
+            this.serverSideSearch =
+                    builder.comment(
+                                    "True to search and sort storage actuator contents on the server and only send the visible " +
+                                            "page to players, instead of sending all contents. Recommended for very large storage " +
+                                            "networks. Note that names and tooltips are searched in the server language.")
+                            .define("serverSideSearch", false);
+            this.virtualSlotItemHandler =
+                    builder.comment(
+                                    "True to expose storage actuators (and stable wormholes linked to them) to hoppers and pipes " +
+                                            "with one slot per distinct item plus one insertion slot, instead of all physical slots. " +
+                                            "Makes automation much faster on large storage networks, but slot numbers no longer " +
+                                            "stay fixed.")
+                            .define("virtualSlotItemHandler", false);
             builder.pop();
         }
     }
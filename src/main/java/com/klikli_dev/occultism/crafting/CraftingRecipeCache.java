@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.crafting;
+
+import com.klikli_dev.occultism.common.misc.ItemStackKey;
+import net.minecraft.world.inventory.CraftingContainer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.crafting.CraftingRecipe;
+import net.minecraft.world.item.crafting.RecipeManager;
+import net.minecraft.world.item.crafting.RecipeType;
+import net.minecraft.world.level.Level;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches crafting recipe lookups by the contents of the crafting matrix, so storage controller crafting grids do not
+ * search all crafting recipes on every change. Each slot is keyed by item and nbt, counts do not matter for crafting.
+ * Special recipes, such as map cloning, may depend on the level and are checked on every lookup instead.
+ * <p>
+ * There is one cache per recipe manager. Servers create a new recipe manager on reload, the client reuses its manager,
+ * so {@link #invalidate()} has to be called when recipes or tags are updated.
+ */
+public class CraftingRecipeCache {
+
+    private static final int MAX_SIZE = 1024;
+    private static final Map<RecipeManager, CraftingRecipeCache> CACHES = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    //accessed by the thread of the side owning the recipe manager only
+    private final Map<MatrixKey, Optional<CraftingRecipe>> recipes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MatrixKey, Optional<CraftingRecipe>> eldest) {
+            return this.size() > MAX_SIZE;
+        }
+    };
+    //the cache must not reference its recipe manager, otherwise the weak key is never collected
+    private final List<CraftingRecipe> cachedRecipes = new ArrayList<>();
+    private final List<CraftingRecipe> specialRecipes = new ArrayList<>();
+
+    protected CraftingRecipeCache(RecipeManager recipeManager) {
+        for (CraftingRecipe recipe : recipeManager.getAllRecipesFor(RecipeType.CRAFTING)) {
+            if (recipe.isSpecial())
+                this.specialRecipes.add(recipe);
+            else
+                this.cachedRecipes.add(recipe);
+        }
+    }
+
+    /**
+     * Finds the crafting recipe for the matrix, like {@link RecipeManager#getRecipeFor(RecipeType, net.minecraft.world.Container, Level)}.
+     *
+     * @param matrix the crafting matrix.
+     * @param level  the level.
+     * @return the matching recipe, if any.
+     */
+    public static Optional<CraftingRecipe> getRecipeFor(CraftingContainer matrix, Level level) {
+        RecipeManager recipeManager = level.getRecipeManager();
+        return CACHES.computeIfAbsent(recipeManager, CraftingRecipeCache::new).get(matrix, level);
+    }
+
+    /**
+     * Clears all cached lookups, needs to be called if recipes or tags change without a new recipe manager.
+     */
+    public static void invalidate() {
+        synchronized (CACHES) {
+            CACHES.clear();
+        }
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    protected Optional<CraftingRecipe> get(CraftingContainer matrix, Level level) {
+        MatrixKey key = new MatrixKey(matrix);
+        Optional<CraftingRecipe> recipe = this.recipes.get(key);
+        if (recipe != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            recipe = findRecipe(this.cachedRecipes, matrix, level);
+            //the key shares the tags of the matrix stacks, so we store a copy
+            this.recipes.put(key.copy(), recipe);
+        }
+        return recipe.isPresent() ? recipe : findRecipe(this.specialRecipes, matrix, level);
+    }
+
+    protected static Optional<CraftingRecipe> findRecipe(List<CraftingRecipe> recipes, CraftingContainer matrix,
+                                                         Level level) {
+        for (CraftingRecipe recipe : recipes) {
+            if (recipe.matches(matrix, level))
+                return Optional.of(recipe);
+        }
+        return Optional.empty();
+    }
+
+    protected static class MatrixKey {
+        protected final int width;
+        protected final ItemStackKey[] slots;
+        protected final int hash;
+
+        protected MatrixKey(CraftingContainer matrix) {
+            this.width = matrix.getWidth();
+            this.slots = new ItemStackKey[matrix.getContainerSize()];
+            for (int i = 0; i < this.slots.length; i++) {
+                ItemStack stack = matrix.getItem(i);
+                this.slots[i] = stack.isEmpty() ? null : ItemStackKey.lookup(stack);
+            }
+            this.hash = 31 * this.width + Arrays.hashCode(this.slots);
+        }
+
+        protected MatrixKey(int width, ItemStackKey[] slots, int hash) {
+            this.width = width;
+            this.slots = slots;
+            this.hash = hash;
+        }
+
+        protected MatrixKey copy() {
+            ItemStackKey[] slots = new ItemStackKey[this.slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = this.slots[i] == null ? null : ItemStackKey.of(this.slots[i].getPrototype());
+            }
+            return new MatrixKey(this.width, slots, this.hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof MatrixKey other))
+                return false;
+            return this.hash == other.hash && this.width == other.width && Arrays.equals(this.slots, other.slots);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.crafting;
+
+import com.klikli_dev.modonomicon.api.multiblock.Multiblock;
+import com.klikli_dev.occultism.common.ritual.AdditionalIngredientMatcher;
+import com.klikli_dev.occultism.crafting.recipe.RitualRecipe;
+import com.klikli_dev.occultism.registry.OccultismRecipes;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.crafting.RecipeManager;
+import net.minecraft.world.level.Level;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Indexes ritual recipes by their activation item, so identifying a ritual only looks at the recipes the item can
+ * start instead of all of them.
+ * <p>
+ * There is one index per recipe manager. Activation items are resolved when the index is built, so like
+ * {@link CraftingRecipeCache} it has to be invalidated when recipes or tags are updated.
+ */
+public class RitualRecipeIndex {
+
+    private static final Map<RecipeManager, RitualRecipeIndex> INDICES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    protected final Map<Item, List<RitualRecipe>> recipesByActivationItem = new HashMap<>();
+    protected final Map<Item, RitualRecipe> recipesByRitualDummy = new HashMap<>();
+    /**
+     * Recipes whose activation item does not list any items, they are candidates for every item.
+     */
+    protected final List<RitualRecipe> unindexedRecipes = new ArrayList<>();
+    protected final Map<RitualRecipe, Integer> recipeOrder = new IdentityHashMap<>();
+
+    protected RitualRecipeIndex(RecipeManager recipeManager) {
+        List<RitualRecipe> recipes = recipeManager.getAllRecipesFor(OccultismRecipes.RITUAL_TYPE.get());
+        for (RitualRecipe recipe : recipes) {
+            this.recipeOrder.put(recipe, this.recipeOrder.size());
+            this.recipesByRitualDummy.putIfAbsent(recipe.getRitualDummy().getItem(), recipe);
+            //resolve the item sets up front so matching on bowl changes does not have to
+            recipe.getIngredients().forEach(AdditionalIngredientMatcher::resolve);
+
+            ItemStack[] activationItems = recipe.getActivationItem().getItems();
+            if (activationItems.length == 0) {
+                this.unindexedRecipes.add(recipe);
+                continue;
+            }
+            for (ItemStack activationItem : activationItems) {
+                List<RitualRecipe> candidates = this.recipesByActivationItem.computeIfAbsent(activationItem.getItem(),
+                        item -> new ArrayList<>());
+                //an ingredient may list the same item multiple times with different nbt
+                if (candidates.isEmpty() || candidates.get(candidates.size() - 1) != recipe)
+                    candidates.add(recipe);
+            }
+        }
+    }
+
+    //region Static Methods
+    protected static RitualRecipeIndex get(Level level) {
+        return INDICES.computeIfAbsent(level.getRecipeManager(), RitualRecipeIndex::new);
+    }
+
+    /**
+     * Clears all indices, needs to be called if recipes or tags change without a new recipe manager.
+     */
+    public static void invalidate() {
+        synchronized (INDICES) {
+            INDICES.clear();
+        }
+        AdditionalIngredientMatcher.invalidate();
+    }
+
+    /**
+     * @param level          the level.
+     * @param activationItem the item used to start the ritual.
+     * @return the recipes that may be started with the given item, in recipe manager order.
+     */
+    public static List<RitualRecipe> getCandidates(Level level, ItemStack activationItem) {
+        return get(level).getCandidates(activationItem);
+    }
+
+    /**
+     * @param level       the level.
+     * @param ritualDummy the ritual dummy item.
+     * @return the recipe represented by the given ritual dummy item.
+     */
+    public static Optional<RitualRecipe> getByRitualDummy(Level level, Item ritualDummy) {
+        return Optional.ofNullable(get(level).recipesByRitualDummy.get(ritualDummy));
+    }
+
+    /**
+     * Identifies the ritual started with the given activation item at the golden bowl, like
+     * {@link RitualRecipe#matches(Level, BlockPos, ItemStack)} on all recipes.
+     * Checks the candidates cheapest first: activation item, then the items on the sacrificial bowls, then the
+     * pentacle. Sacrificial bowls and pentacles are looked up once per pentacle.
+     *
+     * @param level              the level.
+     * @param goldenBowlPosition the position of the golden bowl.
+     * @param activationItem     the item used to start the ritual.
+     * @param pentacleMemo       known pentacle validation results at the golden bowl by pentacle id, new results are
+     *                           added to it.
+     * @return the first matching recipe, or null if there is none.
+     */
+    @Nullable
+    public static RitualRecipe identify(Level level, BlockPos goldenBowlPosition, ItemStack activationItem,
+                                        Map<ResourceLocation, Boolean> pentacleMemo) {
+        Map<ResourceLocation, List<ItemStack>> bowlItems = new HashMap<>();
+        for (RitualRecipe recipe : getCandidates(level, activationItem)) {
+            if (!recipe.getActivationItem().test(activationItem))
+                continue;
+
+            Multiblock pentacle = recipe.getPentacle();
+            if (pentacle == null)
+                continue;
+
+            //the bowls in range depend on the pentacle height only
+            List<ItemStack> items = bowlItems.computeIfAbsent(recipe.getPentacleId(),
+                    id -> recipe.getRitual().getItemsOnSacrificialBowls(level, goldenBowlPosition));
+            if (!recipe.getRitual().matchesAdditionalIngredients(recipe.getIngredients(), items))
+                continue;
+
+            if (pentacleMemo.computeIfAbsent(recipe.getPentacleId(),
+                    id -> pentacle.validate(level, goldenBowlPosition) != null))
+                return recipe;
+        }
+        return null;
+    }
+    //endregion Static Methods
+
+    protected List<RitualRecipe> getCandidates(ItemStack activationItem) {
+        List<RitualRecipe> candidates = this.recipesByActivationItem.getOrDefault(activationItem.getItem(),
+                Collections.emptyList());
+        if (this.unindexedRecipes.isEmpty())
+            return candidates;
+
+        List<RitualRecipe> merged = new ArrayList<>(candidates.size() + this.unindexedRecipes.size());
+        merged.addAll(candidates);
+        merged.addAll(this.unindexedRecipes);
+        merged.sort(Comparator.comparingInt(this.recipeOrder::get));
+        return merged;
+    }
+}
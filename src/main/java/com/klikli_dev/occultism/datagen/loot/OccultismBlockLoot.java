@@ -88,7 +88,7 @@ public class OccultismBlockLoot extends BlockLootSubProvider {
         this.add(OccultismBlocks.IESNIUM_ORE.get(), this.createOreDrop(OccultismBlocks.IESNIUM_ORE.get(), OccultismItems.RAW_IESNIUM.get()));
 
         this.dropSelfWithNbt(OccultismBlocks.STORAGE_CONTROLLER.get(),
-                "items",
+                "matrixId",
                 "sortDirection",
                 "sortType",
                 "maxSlots",
@@ -25,6 +25,8 @@ package com.klikli_dev.occultism.handlers;
 import com.klikli_dev.occultism.Occultism;
 import com.klikli_dev.occultism.client.gui.storage.SatchelScreen;
 import com.klikli_dev.occultism.client.gui.storage.StorageRemoteGui;
+import com.klikli_dev.occultism.crafting.CraftingRecipeCache;
+import com.klikli_dev.occultism.crafting.RitualRecipeIndex;
 import com.klikli_dev.occultism.network.*;
 import com.klikli_dev.occultism.registry.OccultismBlocks;
 import com.klikli_dev.occultism.registry.OccultismSounds;
@@ -38,6 +40,7 @@ import net.minecraft.sounds.SoundEvents;
 import net.minecraft.world.entity.EntityType;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.client.event.InputEvent;
+import net.minecraftforge.client.event.RecipesUpdatedEvent;
 import net.minecraftforge.event.PlayLevelSoundEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
@@ -63,6 +66,13 @@ public class ClientPlayerEventHandler {
         }
     }
 
+    @SubscribeEvent
+    public static void onRecipesUpdated(RecipesUpdatedEvent event) {
+        //the client keeps its recipe manager and just replaces the recipes
+        CraftingRecipeCache.invalidate();
+        RitualRecipeIndex.invalidate();
+    }
+
     @SubscribeEvent
     public static void onKeyInput(final InputEvent.Key event) {
         Minecraft minecraft = Minecraft.getInstance();
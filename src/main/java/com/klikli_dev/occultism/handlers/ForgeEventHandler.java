@@ -23,8 +23,29 @@
 package com.klikli_dev.occultism.handlers;
 
 import com.klikli_dev.occultism.Occultism;
+import com.klikli_dev.occultism.common.entity.OccultismEntityIndex;
+import com.klikli_dev.occultism.common.item.storage.StorageControllerBlockItem;
+import com.klikli_dev.occultism.common.misc.StorageControllerMatrixData;
+import com.klikli_dev.occultism.common.misc.StorageControllerMetrics;
+import com.klikli_dev.occultism.common.misc.StorageControllerRegistry;
+import com.klikli_dev.occultism.common.ritual.RitualEventDispatcher;
+import com.klikli_dev.occultism.common.ritual.RitualFootprintTracker;
+import com.klikli_dev.occultism.crafting.CraftingRecipeCache;
+import com.klikli_dev.occultism.crafting.RitualRecipeIndex;
 import com.klikli_dev.occultism.registry.OccultismCommands;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
 import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.entity.EntityJoinLevelEvent;
+import net.minecraftforge.event.entity.EntityLeaveLevelEvent;
+import net.minecraftforge.event.entity.item.ItemExpireEvent;
+import net.minecraftforge.event.entity.living.LivingDeathEvent;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent;
+import net.minecraftforge.event.level.BlockEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 
@@ -37,5 +58,65 @@ public class ForgeEventHandler {
     public static void registerCommands(RegisterCommandsEvent event) {
         OccultismCommands.register(event.getDispatcher());
     }
+
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        //recipe ingredients may match different items now
+        CraftingRecipeCache.invalidate();
+        RitualRecipeIndex.invalidate();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        //block entities are not removed on shutdown, so drop them here before the next world is loaded
+        StorageControllerRegistry.clear();
+        StorageControllerMetrics.clear();
+        OccultismEntityIndex.clear();
+        RitualFootprintTracker.clear();
+        RitualEventDispatcher.clear();
+        StorageControllerMatrixData.clear();
+    }
+
+    @SubscribeEvent
+    public static void onLevelSave(LevelEvent.Save event) {
+        //storage matrices live in the overworld data folder, so they are saved along with it
+        if (event.getLevel() instanceof ServerLevel level && level.dimension() == Level.OVERWORLD)
+            StorageControllerMatrixData.saveAll(level.getServer());
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onItemExpire(ItemExpireEvent event) {
+        //lowest priority so other mods had their chance to extend the lifespan
+        if (event.getEntity().getItem().getItem() instanceof StorageControllerBlockItem)
+            StorageControllerBlockItem.discardMatrix(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public static void onLivingDeath(LivingDeathEvent event) {
+        RitualEventDispatcher.onLivingDeath(event);
+    }
+
+    @SubscribeEvent
+    public static void onPlayerRightClickItem(PlayerInteractEvent.RightClickItem event) {
+        RitualEventDispatcher.onPlayerRightClickItem(event);
+    }
+
+    @SubscribeEvent
+    public static void onNeighborNotify(BlockEvent.NeighborNotifyEvent event) {
+        //fired for block changes that update neighbours, running rituals re-validate if it is in their footprint
+        RitualFootprintTracker.onBlockChanged(event.getLevel(), event.getPos());
+    }
+
+    @SubscribeEvent
+    public static void onEntityJoinLevel(EntityJoinLevelEvent event) {
+        if (!event.getLevel().isClientSide)
+            OccultismEntityIndex.onJoinLevel(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public static void onEntityLeaveLevel(EntityLeaveLevelEvent event) {
+        if (!event.getLevel().isClientSide)
+            OccultismEntityIndex.onLeaveLevel(event.getEntity());
+    }
     //endregion Static Methods
 }
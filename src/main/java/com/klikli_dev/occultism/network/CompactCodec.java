@@ -0,0 +1,198 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.network;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact wire format for messages that send many stacks or positions at once.
+ * <p>
+ * Items are written as their network registry id, counts as varints, and nbt tags and dimensions go through a
+ * per-message dictionary: the first occurrence is written inline, later occurrences only as a reference to it.
+ * A {@link Writer} and a {@link Reader} must therefore be used for exactly one message and in the same order.
+ */
+public class CompactCodec {
+
+    /**
+     * Dictionary reference meaning "no value".
+     */
+    private static final int NONE = 0;
+
+    public static Writer writer(FriendlyByteBuf buf) {
+        return new Writer(buf);
+    }
+
+    public static Reader reader(FriendlyByteBuf buf) {
+        return new Reader(buf);
+    }
+
+    public static class Writer {
+        private final FriendlyByteBuf buf;
+        private final Object2IntMap<CompoundTag> tags = new Object2IntOpenHashMap<>();
+        private final Object2IntMap<ResourceLocation> locations = new Object2IntOpenHashMap<>();
+
+        protected Writer(FriendlyByteBuf buf) {
+            this.buf = buf;
+        }
+
+        public FriendlyByteBuf getBuf() {
+            return this.buf;
+        }
+
+        public void writeItem(Item item) {
+            this.buf.writeVarInt(Item.getId(item));
+        }
+
+        /**
+         * Writes item, count and tag of the stack. Unlike {@link FriendlyByteBuf#writeItem(ItemStack)} the count is
+         * not limited to a byte.
+         */
+        public void writeStack(ItemStack stack) {
+            if (stack.isEmpty()) {
+                this.buf.writeVarInt(NONE);
+                return;
+            }
+            //offset by one so 0 can mean empty
+            this.buf.writeVarInt(Item.getId(stack.getItem()) + 1);
+            this.buf.writeVarInt(stack.getCount());
+
+            //same rules as FriendlyByteBuf#writeItem
+            CompoundTag tag = null;
+            if (stack.getItem().isDamageable(stack) || stack.getItem().shouldOverrideMultiplayerNbt())
+                tag = stack.getShareTag();
+            this.writeTag(tag);
+        }
+
+        public void writeTag(@Nullable CompoundTag tag) {
+            if (tag == null) {
+                this.buf.writeVarInt(NONE);
+                return;
+            }
+            int ref = this.tags.getInt(tag);
+            if (ref != NONE) {
+                this.buf.writeVarInt(ref);
+                return;
+            }
+            //new entries take the next reference and are written inline
+            ref = this.tags.size() + 1;
+            this.tags.put(tag, ref);
+            this.buf.writeVarInt(ref);
+            this.buf.writeNbt(tag);
+        }
+
+        public void writeLocation(@Nullable ResourceLocation location) {
+            if (location == null) {
+                this.buf.writeVarInt(NONE);
+                return;
+            }
+            int ref = this.locations.getInt(location);
+            if (ref != NONE) {
+                this.buf.writeVarInt(ref);
+                return;
+            }
+            ref = this.locations.size() + 1;
+            this.locations.put(location, ref);
+            this.buf.writeVarInt(ref);
+            this.buf.writeResourceLocation(location);
+        }
+
+        public void writeDimension(ResourceKey<Level> dimension) {
+            this.writeLocation(dimension.location());
+        }
+    }
+
+    public static class Reader {
+        private final FriendlyByteBuf buf;
+        private final List<CompoundTag> tags = new ArrayList<>();
+        private final List<ResourceLocation> locations = new ArrayList<>();
+
+        protected Reader(FriendlyByteBuf buf) {
+            this.buf = buf;
+        }
+
+        public FriendlyByteBuf getBuf() {
+            return this.buf;
+        }
+
+        public Item readItem() {
+            return Item.byId(this.buf.readVarInt());
+        }
+
+        public ItemStack readStack() {
+            int id = this.buf.readVarInt();
+            if (id == NONE)
+                return ItemStack.EMPTY;
+            ItemStack stack = new ItemStack(Item.byId(id - 1), this.buf.readVarInt());
+            stack.readShareTag(this.readTag());
+            return stack;
+        }
+
+        /**
+         * @return the tag, a copy if it was referenced before so stacks never share a tag instance.
+         */
+        @Nullable
+        public CompoundTag readTag() {
+            int ref = this.buf.readVarInt();
+            if (ref == NONE)
+                return null;
+            if (ref <= this.tags.size())
+                return this.tags.get(ref - 1).copy();
+            if (ref != this.tags.size() + 1)
+                throw new IllegalStateException("Invalid tag reference " + ref + ", dictionary size " + this.tags.size());
+            CompoundTag tag = this.buf.readNbt();
+            this.tags.add(tag);
+            return tag;
+        }
+
+        @Nullable
+        public ResourceLocation readLocation() {
+            int ref = this.buf.readVarInt();
+            if (ref == NONE)
+                return null;
+            if (ref <= this.locations.size())
+                return this.locations.get(ref - 1);
+            if (ref != this.locations.size() + 1)
+                throw new IllegalStateException("Invalid location reference " + ref + ", dictionary size " + this.locations.size());
+            ResourceLocation location = this.buf.readResourceLocation();
+            this.locations.add(location);
+            return location;
+        }
+
+        public ResourceKey<Level> readDimension() {
+            return ResourceKey.create(Registries.DIMENSION, this.readLocation());
+        }
+    }
+}
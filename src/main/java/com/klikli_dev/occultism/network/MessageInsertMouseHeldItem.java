@@ -82,7 +82,6 @@ public class MessageInsertMouseHeldItem extends MessageBase {
             OccultismPackets.sendTo(player, new MessageUpdateMouseHeldItem(result));
 
             //update the storage controller
-            OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
             player.containerMenu.broadcastChanges();
         }
     }
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.network;
+
+import com.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
+import com.klikli_dev.occultism.api.common.data.SortDirection;
+import com.klikli_dev.occultism.api.common.data.SortType;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.network.NetworkEvent;
+
+/**
+ * Requests a page of the searched and sorted stacks in the currently opened storage controller, used in server side
+ * search mode. The server answers with {@link MessageUpdateStackPage} now and whenever the contents change.
+ */
+public class MessageRequestStackPage extends MessageBase {
+
+    private static final int MAX_QUERY_LENGTH = 64;
+
+    private String query;
+    private SortType sortType;
+    private SortDirection sortDirection;
+    private int offset;
+    private int count;
+
+    public MessageRequestStackPage(FriendlyByteBuf buf) {
+        this.decode(buf);
+    }
+
+    public MessageRequestStackPage(String query, SortType sortType, SortDirection sortDirection, int offset, int count) {
+        this.query = query;
+        this.sortType = sortType;
+        this.sortDirection = sortDirection;
+        this.offset = offset;
+        this.count = count;
+    }
+
+    @Override
+    public void onServerReceived(MinecraftServer minecraftServer, ServerPlayer player,
+                                 NetworkEvent.Context context) {
+        if (player.containerMenu instanceof IStorageControllerContainer container) {
+            container.requestStackPage(this.query, this.sortType, this.sortDirection, this.offset, this.count);
+        }
+    }
+
+    @Override
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeUtf(this.query, MAX_QUERY_LENGTH);
+        buf.writeByte(this.sortType.getValue());
+        buf.writeByte(this.sortDirection.getValue());
+        buf.writeVarInt(this.offset);
+        buf.writeVarInt(this.count);
+    }
+
+    @Override
+    public void decode(FriendlyByteBuf buf) {
+        this.query = buf.readUtf(MAX_QUERY_LENGTH);
+        this.sortType = SortType.get(buf.readByte());
+        this.sortDirection = SortDirection.get(buf.readByte());
+        this.offset = buf.readVarInt();
+        this.count = buf.readVarInt();
+    }
+}
@@ -47,9 +47,8 @@ public class MessageRequestStacks extends MessageBase {
             IStorageController storageController = ((IStorageControllerContainer) player.containerMenu)
                     .getStorageController();
             if (storageController != null) {
-                OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
-                OccultismPackets
-                        .sendTo(player, new MessageUpdateLinkedMachines(storageController.getLinkedMachines()));
+                ((IStorageControllerContainer) player.containerMenu).syncStacks(true);
+                ((IStorageControllerContainer) player.containerMenu).syncLinkedMachines(true);
                 player.containerMenu.broadcastChanges();
             }
         }
@@ -114,7 +114,7 @@ public class MessageSetRecipe extends MessageBase {
         //sync to client
         container.updateCraftingSlots(true);
         //finally update controller content for client
-        OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+        container.syncStacks(false);
     }
 
     @Override
@@ -95,7 +95,7 @@ public class MessageSetRecipeByID extends MessageBase {
         //sync to client
         container.updateCraftingSlots(true);
         //finally update controller content for client
-        OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+        container.syncStacks(false);
     }
 
     @Override
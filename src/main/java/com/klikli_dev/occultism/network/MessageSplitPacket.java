@@ -22,6 +22,7 @@
 
 package com.klikli_dev.occultism.network;
 
+import io.netty.buffer.ByteBuf;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraftforge.network.NetworkEvent.Context;
 
@@ -29,9 +30,10 @@ import java.util.function.Supplier;
 
 public class MessageSplitPacket {
     /**
-     * The payload.
+     * The payload. On the sending side a slice of the split message, on the receiving side a retained slice of the
+     * received packet.
      */
-    private final byte[] payload;
+    private final ByteBuf payload;
     /**
      * Internal communication id. Used to indicate to what wrapped message this belongs to.
      */
@@ -40,25 +42,39 @@ public class MessageSplitPacket {
      * The index of the split message in the wrapped message.
      */
     private final int packetIndex;
+    /**
+     * The number of split messages the wrapped message consists of.
+     */
+    private final int packetCount;
 
-    public MessageSplitPacket(final int communicationId, final int packetIndex, final byte[] payload) {
+    public MessageSplitPacket(final int communicationId, final int packetIndex, final int packetCount, final ByteBuf payload) {
         this.communicationId = communicationId;
         this.packetIndex = packetIndex;
+        this.packetCount = packetCount;
         this.payload = payload;
     }
 
+    public ByteBuf getPayload() {
+        return this.payload;
+    }
+
     public static void encode(MessageSplitPacket message, FriendlyByteBuf buf) {
         buf.writeVarInt(message.communicationId);
         buf.writeVarInt(message.packetIndex);
-        buf.writeByteArray(message.payload);
+        buf.writeVarInt(message.packetCount);
+        buf.writeVarInt(message.payload.readableBytes());
+        buf.writeBytes(message.payload, message.payload.readerIndex(), message.payload.readableBytes());
     }
 
     public static MessageSplitPacket decode(final FriendlyByteBuf buf) {
-        return new MessageSplitPacket(buf.readVarInt(), buf.readVarInt(), buf.readByteArray());
+        int communicationId = buf.readVarInt();
+        int packetIndex = buf.readVarInt();
+        int packetCount = buf.readVarInt();
+        return new MessageSplitPacket(communicationId, packetIndex, packetCount, buf.readRetainedSlice(buf.readVarInt()));
     }
 
     public static boolean handle(MessageSplitPacket data, Supplier<Context> ctx) {
-        OccultismPackets.addPackagePart(data.communicationId, data.packetIndex, data.payload);
+        OccultismPackets.addPackagePart(ctx, data.communicationId, data.packetIndex, data.packetCount, data.payload);
         ctx.get().setPacketHandled(true);
         return true;
     }
@@ -104,7 +104,6 @@ public class MessageTakeItem extends MessageBase {
             }
 
             //finally, update the storage controller stacks
-            OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
             player.containerMenu.broadcastChanges();
         }
     }
@@ -37,51 +37,81 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * This message sends the stacks in the currently opened storage controller.
+ * This message sends the linked machines of the currently opened storage controller.
+ * Either replaces all machines, or only sends the machines that were linked or changed and the ones that were removed
+ * since the last message.
  */
 public class MessageUpdateLinkedMachines extends MessageBase {
 
+    private boolean fullSync;
     private List<MachineReference> linkedMachines;
+    private List<GlobalBlockPos> removedMachines;
 
     public MessageUpdateLinkedMachines(FriendlyByteBuf buf) {
         this.decode(buf);
     }
 
     public MessageUpdateLinkedMachines(List<MachineReference> linkedMachines) {
-        this.linkedMachines = linkedMachines;
+        this(true, linkedMachines, new ArrayList<>());
     }
 
     public MessageUpdateLinkedMachines(Map<GlobalBlockPos, MachineReference> linkedMachines) {
-        this.linkedMachines = new ArrayList<>(linkedMachines.values());
+        this(new ArrayList<>(linkedMachines.values()));
+    }
+
+    public MessageUpdateLinkedMachines(List<MachineReference> changedMachines, List<GlobalBlockPos> removedMachines) {
+        this(false, changedMachines, removedMachines);
+    }
+
+    protected MessageUpdateLinkedMachines(boolean fullSync, List<MachineReference> linkedMachines,
+                                          List<GlobalBlockPos> removedMachines) {
+        this.fullSync = fullSync;
+        this.linkedMachines = linkedMachines;
+        this.removedMachines = removedMachines;
     }
 
     @Override
     @OnlyIn(Dist.CLIENT)
     public void onClientReceived(Minecraft minecraft, Player player, NetworkEvent.Context context) {
         if (minecraft.screen instanceof IStorageControllerGui gui) {
-            if (gui != null) {
+            if (this.fullSync)
                 gui.setLinkedMachines(this.linkedMachines);
-            }
+            else
+                gui.updateLinkedMachines(this.linkedMachines, this.removedMachines);
         }
     }
 
     @Override
     public void encode(FriendlyByteBuf buf) {
-        buf.writeInt(this.linkedMachines.size());
+        CompactCodec.Writer writer = CompactCodec.writer(buf);
+        buf.writeBoolean(this.fullSync);
+        buf.writeVarInt(this.linkedMachines.size());
         for (MachineReference machineReference : this.linkedMachines) {
-            machineReference.encode(buf);
+            machineReference.encode(writer);
+        }
+        buf.writeVarInt(this.removedMachines.size());
+        for (GlobalBlockPos pos : this.removedMachines) {
+            pos.encode(writer);
         }
     }
 
     @Override
     public void decode(FriendlyByteBuf buf) {
-        int linkedMachinesSize = buf.readInt();
+        CompactCodec.Reader reader = CompactCodec.reader(buf);
+        this.fullSync = buf.readBoolean();
+        int linkedMachinesSize = buf.readVarInt();
         this.linkedMachines = new ArrayList<>(linkedMachinesSize);
 
         for (int i = 0; i < linkedMachinesSize; i++) {
-            MachineReference machineReference = MachineReference.from(buf);
+            MachineReference machineReference = MachineReference.from(reader);
             this.linkedMachines.add(machineReference);
         }
+
+        int removedMachinesSize = buf.readVarInt();
+        this.removedMachines = new ArrayList<>(removedMachinesSize);
+        for (int i = 0; i < removedMachinesSize; i++) {
+            this.removedMachines.add(GlobalBlockPos.from(reader));
+        }
     }
 
 }
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.network;
+
+import com.klikli_dev.occultism.api.client.gui.IStorageControllerGui;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This message sends one page of the searched and sorted stacks in the currently opened storage controller, used in
+ * server side search mode instead of {@link MessageUpdateStacks}.
+ */
+public class MessageUpdateStackPage extends MessageBase {
+
+    private int totalCount;
+    private int offset;
+    private List<ItemStack> stacks;
+    private int usedSlots;
+    private int maxSlots;
+
+    public MessageUpdateStackPage(FriendlyByteBuf buf) {
+        this.decode(buf);
+    }
+
+    public MessageUpdateStackPage(int totalCount, int offset, List<ItemStack> stacks, int usedSlots, int maxSlots) {
+        this.totalCount = totalCount;
+        this.offset = offset;
+        this.stacks = stacks;
+        this.usedSlots = usedSlots;
+        this.maxSlots = maxSlots;
+    }
+
+    @Override
+    @OnlyIn(Dist.CLIENT)
+    public void onClientReceived(Minecraft minecraft, Player player, NetworkEvent.Context context) {
+        if (minecraft.screen instanceof IStorageControllerGui gui) {
+            gui.setStackPage(this.totalCount, this.offset, this.stacks);
+            gui.setUsedSlots(this.usedSlots);
+            gui.setMaxSlots(this.maxSlots);
+        }
+    }
+
+    @Override
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeVarInt(this.totalCount);
+        buf.writeVarInt(this.offset);
+        buf.writeVarInt(this.usedSlots);
+        buf.writeVarInt(this.maxSlots);
+
+        CompactCodec.Writer writer = CompactCodec.writer(buf);
+        buf.writeVarInt(this.stacks.size());
+        for (ItemStack stack : this.stacks) {
+            writer.writeStack(stack);
+        }
+    }
+
+    @Override
+    public void decode(FriendlyByteBuf buf) {
+        this.totalCount = buf.readVarInt();
+        this.offset = buf.readVarInt();
+        this.usedSlots = buf.readVarInt();
+        this.maxSlots = buf.readVarInt();
+
+        CompactCodec.Reader reader = CompactCodec.reader(buf);
+        int stacksSize = buf.readVarInt();
+        this.stacks = new ArrayList<>(stacksSize);
+        for (int i = 0; i < stacksSize; i++) {
+            this.stacks.add(reader.readStack());
+        }
+    }
+}
@@ -24,6 +24,8 @@ package com.klikli_dev.occultism.network;
 
 import com.klikli_dev.occultism.api.client.gui.IStorageControllerGui;
 import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import io.netty.buffer.Unpooled;
 import net.minecraft.client.Minecraft;
 import net.minecraft.network.FriendlyByteBuf;
@@ -39,12 +41,19 @@ import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 /**
- * This message sends the stacks in the currently opened storage controller.
+ * This message sends a full snapshot of the stacks in the currently opened storage controller.
+ * Each stack is sent with its stable id, so subsequent {@link MessageUpdateStacksDelta}s can refer to it.
+ * The snapshot is captured on the server thread, but {@link #compress()} only reads the copied stacks, so it can run on
+ * a worker thread. The compressed payload is shared by all players it is sent to.
  */
 public class MessageUpdateStacks extends MessageBase {
 
     private static final int DEFAULT_BUFFER_SIZE = 2 * 1024;
+    //id, item, count and tag reference without nbt are usually less than 16 bytes
+    private static final int ESTIMATED_STACK_SIZE = 16;
 
+    private long version;
+    private int[] ids;
     private List<ItemStack> stacks;
     private int usedSlots;
     private int maxSlots;
@@ -54,11 +63,50 @@ public class MessageUpdateStacks extends MessageBase {
         this.decode(buf);
     }
 
-    public MessageUpdateStacks(List<ItemStack> stacks, int usedSlots, int maxSlots) {
+    /**
+     * Creates an uncompressed snapshot, call {@link #compress()} before sending.
+     *
+     * @param version   the storage controller index version the snapshot was captured at.
+     * @param ids       the stable ids of the stacks.
+     * @param stacks    the stacks, must not be modified after handing them to the message.
+     * @param usedSlots the used slots.
+     * @param maxSlots  the max slots.
+     */
+    public MessageUpdateStacks(long version, int[] ids, List<ItemStack> stacks, int usedSlots, int maxSlots) {
+        this.version = version;
+        this.ids = ids;
         this.stacks = stacks;
         this.usedSlots = usedSlots;
         this.maxSlots = maxSlots;
-        this.compress();
+    }
+
+    /**
+     * @return the storage controller index version this snapshot was captured at. Only available on the sending side.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the ids of the stacks in this snapshot. Only available on the sending side.
+     */
+    public int[] getIds() {
+        return this.ids;
+    }
+
+    /**
+     * @return the size of the compressed payload in bytes.
+     */
+    public int getCompressedSize() {
+        return this.payload.readableBytes();
+    }
+
+    public int getUsedSlots() {
+        return this.usedSlots;
+    }
+
+    public int getMaxSlots() {
+        return this.maxSlots;
     }
 
     @Override
@@ -67,7 +115,13 @@ public class MessageUpdateStacks extends MessageBase {
         this.uncompress();
         if (minecraft.screen instanceof IStorageControllerGui gui) {
             if (gui != null) {
-                gui.setStacks(this.stacks);
+                Int2ObjectMap<ItemStack> stacksById = new Int2ObjectLinkedOpenHashMap<>(this.stacks.size());
+                for (int i = 0; i < this.stacks.size(); i++) {
+                    stacksById.put(this.ids[i], this.stacks.get(i));
+                }
+                gui.setStacks(stacksById);
+                //deltas are numbered starting after the snapshot
+                gui.setStacksSequence(0);
                 gui.setUsedSlots(this.usedSlots);
                 gui.setMaxSlots(this.maxSlots);
                 gui.markDirty();
@@ -111,13 +165,15 @@ public class MessageUpdateStacks extends MessageBase {
             } catch (Exception e) {
             }
         }
+        decompressor.end();
 
-        int stacksSize = uncompressed.readInt();
+        CompactCodec.Reader reader = CompactCodec.reader(uncompressed);
+        int stacksSize = uncompressed.readVarInt();
+        this.ids = new int[stacksSize];
         this.stacks = new ArrayList<>(stacksSize);
         for (int i = 0; i < stacksSize; i++) {
-            ItemStack stack = uncompressed.readItem();
-            stack.setCount(uncompressed.readInt());
-            this.stacks.add(stack);
+            this.ids[i] = uncompressed.readVarInt();
+            this.stacks.add(reader.readStack());
         }
     }
 
@@ -127,12 +183,13 @@ public class MessageUpdateStacks extends MessageBase {
 
         // Give the compressor the data to compress
         //create buffer with reasonable size (will increase automatically as needed
-        FriendlyByteBuf uncompressed = new FriendlyByteBuf(Unpooled.buffer(DEFAULT_BUFFER_SIZE * this.stacks.size()));
-        uncompressed.writeInt(this.stacks.size());
+        FriendlyByteBuf uncompressed = new FriendlyByteBuf(Unpooled.buffer(ESTIMATED_STACK_SIZE * this.stacks.size()));
+        CompactCodec.Writer writer = CompactCodec.writer(uncompressed);
+        uncompressed.writeVarInt(this.stacks.size());
 
-        for (ItemStack stack : this.stacks) {
-            uncompressed.writeItem(stack);
-            uncompressed.writeInt(stack.getCount());
+        for (int i = 0; i < this.stacks.size(); i++) {
+            uncompressed.writeVarInt(this.ids[i]);
+            writer.writeStack(this.stacks.get(i));
         }
 
         compressor.setInput(uncompressed.array(), 0, uncompressed.readableBytes());
@@ -146,6 +203,7 @@ public class MessageUpdateStacks extends MessageBase {
             int count = compressor.deflate(buf);
             this.payload.writeBytes(buf, 0, count);
         }
+        compressor.end();
     }
 
 }
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright 2023 klikli-dev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.klikli_dev.occultism.network;
+
+import com.klikli_dev.occultism.api.client.gui.IStorageControllerGui;
+import it.unimi.dsi.fastutil.ints.*;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.network.NetworkEvent;
+
+/**
+ * This message sends the changes to the stacks in the currently opened storage controller since the last message.
+ * Stacks are identified by the stable ids sent with the {@link MessageUpdateStacks} snapshot.
+ * Deltas are numbered, if the client misses one it requests a new snapshot.
+ */
+public class MessageUpdateStacksDelta extends MessageBase {
+
+    private int sequence;
+    private int usedSlots;
+    private int maxSlots;
+    private Int2ObjectMap<ItemStack> addedStacks;
+    private Int2IntMap changedCounts;
+    private IntList removedIds;
+
+    public MessageUpdateStacksDelta(FriendlyByteBuf buf) {
+        this.decode(buf);
+    }
+
+    public MessageUpdateStacksDelta(int sequence, int usedSlots, int maxSlots, Int2ObjectMap<ItemStack> addedStacks,
+                                    Int2IntMap changedCounts, IntList removedIds) {
+        this.sequence = sequence;
+        this.usedSlots = usedSlots;
+        this.maxSlots = maxSlots;
+        this.addedStacks = addedStacks;
+        this.changedCounts = changedCounts;
+        this.removedIds = removedIds;
+    }
+
+    @Override
+    @OnlyIn(Dist.CLIENT)
+    public void onClientReceived(Minecraft minecraft, Player player, NetworkEvent.Context context) {
+        if (minecraft.screen instanceof IStorageControllerGui gui) {
+            //still waiting for a snapshot, ignore.
+            if (gui.getStacksSequence() < 0)
+                return;
+
+            //we missed a delta, so our stacks are out of date.
+            if (this.sequence != gui.getStacksSequence() + 1) {
+                gui.setStacksSequence(-1);
+                OccultismPackets.sendToServer(new MessageRequestStacks());
+                return;
+            }
+
+            gui.updateStacks(this.addedStacks, this.changedCounts, this.removedIds);
+            gui.setStacksSequence(this.sequence);
+            gui.setUsedSlots(this.usedSlots);
+            gui.setMaxSlots(this.maxSlots);
+            gui.markDirty();
+        }
+    }
+
+    @Override
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeVarInt(this.sequence);
+        buf.writeVarInt(this.usedSlots);
+        buf.writeVarInt(this.maxSlots);
+
+        CompactCodec.Writer writer = CompactCodec.writer(buf);
+        buf.writeVarInt(this.addedStacks.size());
+        for (Int2ObjectMap.Entry<ItemStack> entry : this.addedStacks.int2ObjectEntrySet()) {
+            buf.writeVarInt(entry.getIntKey());
+            writer.writeStack(entry.getValue());
+        }
+
+        buf.writeVarInt(this.changedCounts.size());
+        for (Int2IntMap.Entry entry : this.changedCounts.int2IntEntrySet()) {
+            buf.writeVarInt(entry.getIntKey());
+            buf.writeVarInt(entry.getIntValue());
+        }
+
+        buf.writeVarInt(this.removedIds.size());
+        for (int i = 0; i < this.removedIds.size(); i++) {
+            buf.writeVarInt(this.removedIds.getInt(i));
+        }
+    }
+
+    @Override
+    public void decode(FriendlyByteBuf buf) {
+        this.sequence = buf.readVarInt();
+        this.usedSlots = buf.readVarInt();
+        this.maxSlots = buf.readVarInt();
+
+        CompactCodec.Reader reader = CompactCodec.reader(buf);
+        int addedSize = buf.readVarInt();
+        this.addedStacks = new Int2ObjectLinkedOpenHashMap<>(addedSize);
+        for (int i = 0; i < addedSize; i++) {
+            int id = buf.readVarInt();
+            this.addedStacks.put(id, reader.readStack());
+        }
+
+        int changedSize = buf.readVarInt();
+        this.changedCounts = new Int2IntOpenHashMap(changedSize);
+        for (int i = 0; i < changedSize; i++) {
+            this.changedCounts.put(buf.readVarInt(), buf.readVarInt());
+        }
+
+        int removedSize = buf.readVarInt();
+        this.removedIds = new IntArrayList(removedSize);
+        for (int i = 0; i < removedSize; i++) {
+            this.removedIds.add(buf.readVarInt());
+        }
+    }
+
+}
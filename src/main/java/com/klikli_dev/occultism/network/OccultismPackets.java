@@ -23,18 +23,22 @@
 package com.klikli_dev.occultism.network;
 
 import com.klikli_dev.occultism.Occultism;
+import io.netty.buffer.ByteBuf;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.level.Level;
 import net.minecraftforge.common.util.FakePlayer;
+import net.minecraftforge.network.NetworkEvent;
 import net.minecraftforge.network.NetworkRegistry;
 import net.minecraftforge.network.PacketDistributor;
 import net.minecraftforge.network.simple.SimpleChannel;
 
+import java.util.function.Supplier;
+
 public class OccultismPackets {
-    public static final String PROTOCOL_VERSION = "1";
+    public static final String PROTOCOL_VERSION = "4";
     public static final ResourceLocation CHANNEL = new ResourceLocation(Occultism.MODID, "main");
     public static final SimpleChannel INSTANCE = NetworkRegistry.newSimpleChannel(
             CHANNEL,
@@ -76,6 +80,24 @@ public class OccultismPackets {
                 MessageUpdateStacks::new,
                 OccultismPacketHandler::handle);
 
+        INSTANCE.registerMessage(nextID(),
+                MessageUpdateStacksDelta.class,
+                MessageUpdateStacksDelta::encode,
+                MessageUpdateStacksDelta::new,
+                OccultismPacketHandler::handle);
+
+        INSTANCE.registerMessage(nextID(),
+                MessageRequestStackPage.class,
+                MessageRequestStackPage::encode,
+                MessageRequestStackPage::new,
+                OccultismPacketHandler::handle);
+
+        INSTANCE.registerMessage(nextID(),
+                MessageUpdateStackPage.class,
+                MessageUpdateStackPage::encode,
+                MessageUpdateStackPage::new,
+                OccultismPacketHandler::handle);
+
         INSTANCE.registerMessage(nextID(),
                 MessageSetRecipe.class,
                 MessageSetRecipe::encode,
@@ -253,7 +275,7 @@ public class OccultismPackets {
         }
     }
 
-    public static void addPackagePart(int communicationId, int packetIndex, byte[] payload) {
-        SPLITTER.addPackagePart(communicationId, packetIndex, payload);
+    public static void addPackagePart(Supplier<NetworkEvent.Context> ctx, int communicationId, int packetIndex, int packetCount, ByteBuf payload) {
+        SPLITTER.addPackagePart(ctx, communicationId, packetIndex, packetCount, payload);
     }
 }
@@ -22,8 +22,13 @@
 
 package com.klikli_dev.occultism.network;
 
-import com.google.common.primitives.Bytes;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.network.Connection;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
@@ -33,27 +38,56 @@ import net.minecraftforge.network.simple.SimpleChannel;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 
+import javax.annotation.Nullable;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+/**
+ * Splits messages that exceed the vanilla packet size into {@link MessageSplitPacket}s.
+ * <p>
+ * The sender slices the encoded message without copying it, every slice is written once into its own packet.
+ * The wrapped message itself is then reduced to a small marker that is ignored by the receiver.
+ * The receiver collects the slices per connection in a {@link CompositeByteBuf} and decodes and dispatches the message
+ * as soon as the last slice arrived. Incomplete messages are evicted after {@link #REASSEMBLY_TIMEOUT_MILLIS}, and
+ * each connection may only hold a limited amount of bytes in reassembly.
+ */
 public class PacketSplitter {
-    private final static int MAX_PACKET_SIZE = 943718;
-    private static final Map<Integer, Map<Integer, byte[]>> PACKAGE_CACHE = new HashMap<>();
+    public final static int MAX_PACKET_SIZE = 943718;
+    private final static long REASSEMBLY_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * Decoded in place of a split message, its parts are dispatched separately. Must not be null, the channel does not
+     * call the consumer for null messages and the packet would count as unhandled.
+     */
+    private final static Object SPLIT_MARKER = new Object();
 
     private final ResourceLocation channelId;
     private final SimpleChannel channel;
     private final Map<Integer, ServerPlayer> messageTargets = new HashMap<>();
     private final Map<Integer, Integer> packetMaximums = new HashMap<>();
+    private final Map<Integer, RegisteredMessage<?>> registeredMessages = new HashMap<>();
     private final Set<Class<?>> messagesToSplit = new HashSet<>();
+    /**
+     * Messages in reassembly, per connection. Weak keys so closed connections do not leak their parts.
+     */
+    private final Map<Connection, ReassemblyTable> reassemblyTables = new WeakHashMap<>();
     private final int maxNumberOfMessages;
+    private int maxPacketsPerMessage;
     private int comId = 0;
     private int id;
 
+    private final AtomicLong splitMessages = new AtomicLong();
+    private final AtomicLong splitBytes = new AtomicLong();
+    private final AtomicLong reassembledMessages = new AtomicLong();
+    private final AtomicLong droppedReassemblies = new AtomicLong();
+
     public PacketSplitter(int maxNumberOfMessages, SimpleChannel channel, ResourceLocation CHANNEL_ID) {
         this.maxNumberOfMessages = maxNumberOfMessages;
+        this.maxPacketsPerMessage = maxNumberOfMessages;
         this.channel = channel;
         this.channelId = CHANNEL_ID;
     }
@@ -62,6 +96,35 @@ public class PacketSplitter {
         return this.messagesToSplit.contains(clazz);
     }
 
+    /**
+     * @return the number of messages that had to be split before sending.
+     */
+    public long getSplitMessages() {
+        return this.splitMessages.get();
+    }
+
+    /**
+     * @return the total size in bytes of all messages that had to be split before sending.
+     */
+    public long getSplitBytes() {
+        return this.splitBytes.get();
+    }
+
+    /**
+     * @return the number of split messages that were received completely.
+     */
+    public long getReassembledMessages() {
+        return this.reassembledMessages.get();
+    }
+
+    /**
+     * @return the number of split messages that were discarded because they timed out, exceeded the size limits or
+     * could not be decoded.
+     */
+    public long getDroppedReassemblies() {
+        return this.droppedReassemblies.get();
+    }
+
     public void sendToPlayer(ServerPlayer player, Object message) {
         if (this.id == 0) this.id++; // in case we wrapped around, 0 is reserved for server
         int id = this.id++;
@@ -91,7 +154,9 @@ public class PacketSplitter {
 
     public <MSG> void registerMessage(int index, int maxNumberOfMessages, Class<MSG> messageType, BiConsumer<MSG, FriendlyByteBuf> encoder, Function<FriendlyByteBuf, MSG> decoder, BiConsumer<MSG, Supplier<NetworkEvent.Context>> messageConsumer) {
         this.packetMaximums.put(index, maxNumberOfMessages);
+        this.maxPacketsPerMessage = Math.max(this.maxPacketsPerMessage, maxNumberOfMessages);
         this.messagesToSplit.add(messageType);
+        this.registeredMessages.put(index, new RegisteredMessage<>(decoder, messageConsumer));
 
         BiConsumer<MSG, FriendlyByteBuf> wrappedEncoder = (msg, buffer) -> {
             int id = buffer.readInt();
@@ -105,7 +170,26 @@ public class PacketSplitter {
             this.createSplittingConsumer(player).accept(msg, buffer);
         };
 
-        this.channel.registerMessage(index, messageType, wrappedEncoder, this.createPacketCombiner().andThen(decoder), messageConsumer);
+        Function<FriendlyByteBuf, MSG> wrappedDecoder = (buffer) -> {
+            //split messages are dispatched once their last part arrived, what remains here is just the marker.
+            if (buffer.readShort() != 0) {
+                buffer.skipBytes(buffer.readableBytes());
+                @SuppressWarnings("unchecked")
+                MSG marker = (MSG) SPLIT_MARKER; //never handed to the message consumer, see wrappedConsumer
+                return marker;
+            }
+            return decoder.apply(buffer);
+        };
+
+        BiConsumer<MSG, Supplier<NetworkEvent.Context>> wrappedConsumer = (msg, ctx) -> {
+            if (msg == SPLIT_MARKER) {
+                ctx.get().setPacketHandled(true);
+                return;
+            }
+            messageConsumer.accept(msg, ctx);
+        };
+
+        this.channel.registerMessage(index, messageType, wrappedEncoder, wrappedDecoder, wrappedConsumer);
     }
 
     private <MSG> BiConsumer<MSG, FriendlyByteBuf> createSplittingConsumer(ServerPlayer playerEntity) {
@@ -121,49 +205,27 @@ public class PacketSplitter {
             //this short is written here in case we are not splitting, ignore for split packages
             buf.readShort();
 
-            //ignore the above as it is not required for the final packet
-            int currentIndex = buf.readerIndex();
-            int packetIndex = 0;
-            final int comId = this.comId++;
-
-            //Data for this packet
-            byte[] packetData = new byte[0];
-
+            //the packetId goes in front of the payload so the receiver knows how to decode the reassembled message
+            buf.setByte(buf.readerIndex() - 1, packetId);
+            int currentIndex = buf.readerIndex() - 1;
+            int payloadSize = buf.writerIndex() - currentIndex;
+            int expectedPackets = getPacketCount(payloadSize);
             int maximumPackets = this.packetMaximums.get(packetId);
-            int expectedPackets = buf.writerIndex() / MAX_PACKET_SIZE + 1;
-            boolean failure = false;
-
-            //Loop while data is available.
-            while (currentIndex < buf.writerIndex()) {
-
-                int sliceSize = Math.min(MAX_PACKET_SIZE, buf.writerIndex() - currentIndex);
-
-                //Extract the sub data array.
-                byte[] subPacketData = Arrays.copyOfRange(buf.array(), currentIndex, currentIndex + sliceSize);
-
-                if (packetIndex == 0) { // Assign Data for first Packet to this packet.
-                    packetData = subPacketData;
-                    packetIndex++;
-                } else {
-                    //Construct the split packet.
-                    var splitPacketMessage = new MessageSplitPacket(comId, packetIndex++, subPacketData);
+            final int comId = this.comId++;
 
+            if (expectedPackets > maximumPackets) {
+                LogManager.getLogger().error("Failure Splitting Packets on Channel \"" + this.channelId + "\"." + " with " + MSG.getClass() + ". " +
+                        " Expected number of Packets " + expectedPackets + ", maximum number of packets for a message of this type " + maximumPackets);
+            } else {
+                this.splitPayload(buf.slice(currentIndex, payloadSize), comId, splitPacketMessage -> {
                     if (playerEntity == null) {
                         this.channel.send(PacketDistributor.SERVER.noArg(), splitPacketMessage);
                     } else {
                         this.channel.send(PacketDistributor.PLAYER.with(() -> playerEntity), splitPacketMessage);
                     }
-                }
-
-                //Move our working index.
-                currentIndex += sliceSize;
-
-                if (packetIndex > maximumPackets) {
-                    LogManager.getLogger().error("Failure Splitting Packets on Channel \"" + this.channelId + "\"." + " with " + MSG.getClass() + ". " +
-                            " Number of Packets sent " + (packetIndex - 1) + ", expected number of Packets " + expectedPackets + ", maximum number of packets for a message of this type " + this.packetMaximums.get(packetId));
-                    failure = true;
-                    break;
-                }
+                });
+                this.splitMessages.incrementAndGet();
+                this.splitBytes.addAndGet(payloadSize);
             }
 
             //start writing at the beginning
@@ -172,79 +234,205 @@ public class PacketSplitter {
             //packetId is required for forge to match the packet
             buf.writeByte(packetId);
 
-            //number of packets the packet was split into
-            buf.writeShort(failure ? expectedPackets : packetIndex);
+            //number of packets the packet was split into, the receiver ignores this marker
+            buf.writeShort(expectedPackets);
             buf.writeInt(comId);
-            buf.writeByteArray(packetData);
 
             //copies the written data into a new buffer discarding the old one
             buf.capacity(buf.writerIndex());
         };
     }
 
-    private Function<FriendlyByteBuf, FriendlyByteBuf> createPacketCombiner() {
-        return (buf) -> {
-            int size = buf.readShort();
+    /**
+     * Slices the payload into split packets. Package-private so benchmarks can measure it without a channel.
+     *
+     * @param payload         the encoded message, starting with its packet id.
+     * @param communicationId the id of the split message.
+     * @param sender          sends each split packet.
+     */
+    void splitPayload(ByteBuf payload, int communicationId, Consumer<MessageSplitPacket> sender) {
+        int packetCount = getPacketCount(payload.readableBytes());
+        int packetIndex = 0;
+        for (int offset = payload.readerIndex(); offset < payload.writerIndex(); offset += MAX_PACKET_SIZE) {
+            int sliceSize = Math.min(MAX_PACKET_SIZE, payload.writerIndex() - offset);
+            //the slice shares memory with the payload, it is copied exactly once when the split packet is encoded.
+            sender.accept(new MessageSplitPacket(communicationId, packetIndex++, packetCount,
+                    payload.slice(offset, sliceSize)));
+        }
+    }
 
-            //This packet was not split
-            if (size < 2) return buf;
+    /**
+     * @return the number of split packets needed for a payload of the given size.
+     */
+    static int getPacketCount(int payloadSize) {
+        return (payloadSize + MAX_PACKET_SIZE - 1) / MAX_PACKET_SIZE;
+    }
 
-            int comId = buf.readInt();
+    /**
+     * Adds a part of a split message. Once all parts arrived the message is decoded and handed to its consumer.
+     * Called on the netty thread.
+     *
+     * @param ctx           the context of the split packet, used to identify the connection and to dispatch the message.
+     * @param communicationId the id of the split message.
+     * @param packetIndex   the index of this part.
+     * @param packetCount   the total number of parts.
+     * @param payload       the part, ownership is transferred to the splitter.
+     */
+    public void addPackagePart(Supplier<NetworkEvent.Context> ctx, int communicationId, int packetIndex, int packetCount, ByteBuf payload) {
+        ByteBuf completed = this.reassemble(ctx.get().getNetworkManager(), communicationId, packetIndex, packetCount, payload);
+        if (completed != null)
+            this.dispatch(completed, ctx);
+    }
 
-            Map<Integer, byte[]> partsMap = PACKAGE_CACHE.get(comId);
-            if (partsMap == null || partsMap.size() != size - 1) {
-                int partSize = partsMap == null ? 0 : partsMap.size();
-                int id = buf.readUnsignedByte();
-                int max = this.packetMaximums.get(id) == null ? 0 : this.packetMaximums.get(id);
-                throw new PacketSplittingException(this.channelId, partSize, size, max, id);
+    /**
+     * Adds a part of a split message received on the given connection.
+     * Package-private so benchmarks can measure the reassembly without a channel.
+     *
+     * @param connection      the connection the part was received on.
+     * @param communicationId the id of the split message.
+     * @param packetIndex     the index of this part.
+     * @param packetCount     the total number of parts.
+     * @param payload         the part, ownership is transferred to the splitter.
+     * @return the reassembled message if this was the last missing part, null otherwise. Ownership goes to the caller.
+     */
+    @Nullable
+    ByteBuf reassemble(Connection connection, int communicationId, int packetIndex, int packetCount, ByteBuf payload) {
+        synchronized (this.reassemblyTables) {
+            long now = System.currentTimeMillis();
+            this.reassemblyTables.values().forEach(table -> table.evictExpired(now));
+
+            if (packetCount < 1 || packetCount > this.maxPacketsPerMessage || packetIndex < 0 || packetIndex >= packetCount) {
+                LogManager.getLogger().error("Dropping split packet on Channel \"" + this.channelId + "\" with invalid index " +
+                        packetIndex + " of " + packetCount + " packets.");
+                payload.release();
+                this.droppedReassemblies.incrementAndGet();
+                return null;
             }
 
-            //Add data that came from this packet
-            this.addPackagePart(comId, 0, buf.readByteArray());
+            ReassemblyTable table = this.reassemblyTables.computeIfAbsent(connection, c -> new ReassemblyTable());
+            return table.add(communicationId, packetIndex, packetCount, payload, now);
+        }
+    }
 
-            //Combine Cached Data
-            final byte[] packetData = partsMap.entrySet()
-                    .stream()
-                    .sorted(Map.Entry.comparingByKey())
-                    .map(Map.Entry::getValue)
-                    .reduce(new byte[0], Bytes::concat);
+    private void dispatch(ByteBuf completed, Supplier<NetworkEvent.Context> ctx) {
+        try {
+            FriendlyByteBuf buffer = new FriendlyByteBuf(completed);
+            int packetId = buffer.readUnsignedByte();
+            RegisteredMessage<?> message = this.registeredMessages.get(packetId);
+            if (message == null) {
+                LogManager.getLogger().error("Received split packet on Channel \"" + this.channelId + "\" for unknown message " + packetId + ".");
+                this.droppedReassemblies.incrementAndGet();
+                return;
+            }
+            message.dispatch(buffer, ctx);
+            this.reassembledMessages.incrementAndGet();
+        } finally {
+            completed.release();
+        }
+    }
 
-            FriendlyByteBuf buffer = new FriendlyByteBuf(Unpooled.wrappedBuffer(packetData));
+    private static class RegisteredMessage<MSG> {
+        private final Function<FriendlyByteBuf, MSG> decoder;
+        private final BiConsumer<MSG, Supplier<NetworkEvent.Context>> messageConsumer;
 
-            //remove data from cache
-            PACKAGE_CACHE.remove(comId);
-            return buffer;
-        };
-    }
+        private RegisteredMessage(Function<FriendlyByteBuf, MSG> decoder, BiConsumer<MSG, Supplier<NetworkEvent.Context>> messageConsumer) {
+            this.decoder = decoder;
+            this.messageConsumer = messageConsumer;
+        }
 
-    public void addPackagePart(int communicationId, int packetIndex, byte[] payload) {
-        //Sync on the message cache since this is still on the Netty thread.
-        synchronized (PacketSplitter.PACKAGE_CACHE) {
-            PacketSplitter.PACKAGE_CACHE.computeIfAbsent(communicationId, (id) -> new ConcurrentHashMap<>());
-            PacketSplitter.PACKAGE_CACHE.get(communicationId).put(packetIndex, payload);
+        private void dispatch(FriendlyByteBuf buffer, Supplier<NetworkEvent.Context> ctx) {
+            this.messageConsumer.accept(this.decoder.apply(buffer), ctx);
         }
     }
-}
 
-class PacketSplittingException extends RuntimeException {
-    ResourceLocation channnelId;
-    int actualSize;
-    int expectedSize;
-    int maximumSize;
-    int packetId;
+    /**
+     * The split messages in reassembly for one connection.
+     */
+    private class ReassemblyTable {
+        private final Int2ObjectMap<PendingMessage> pending = new Int2ObjectOpenHashMap<>();
+        private long pendingBytes;
+
+        /**
+         * @return the reassembled message if this was the last missing part, null otherwise.
+         */
+        private ByteBuf add(int communicationId, int packetIndex, int packetCount, ByteBuf payload, long now) {
+            PendingMessage message = this.pending.get(communicationId);
+            if (message == null) {
+                message = new PendingMessage(packetCount, now);
+                this.pending.put(communicationId, message);
+            }
 
-    public PacketSplittingException(ResourceLocation channnelId, int actualSize, int expectedSize, int maximumSize, int packetId) {
-        this.channnelId = channnelId;
-        this.actualSize = actualSize;
-        this.expectedSize = expectedSize;
-        this.maximumSize = maximumSize;
-        this.packetId = packetId;
-    }
+            if (message.parts.length != packetCount || message.parts[packetIndex] != null ||
+                    this.pendingBytes + payload.readableBytes() > this.getMaxPendingBytes()) {
+                LogManager.getLogger().error("Dropping split message " + communicationId + " on Channel \"" + PacketSplitter.this.channelId + "\"." +
+                        " Part " + packetIndex + " of " + packetCount + " is inconsistent or exceeds the reassembly limit.");
+                payload.release();
+                this.drop(communicationId);
+                return null;
+            }
+
+            message.parts[packetIndex] = payload;
+            message.received++;
+            message.size += payload.readableBytes();
+            this.pendingBytes += payload.readableBytes();
+
+            if (message.received < packetCount)
+                return null;
+
+            this.pending.remove(communicationId);
+            this.pendingBytes -= message.size;
+            CompositeByteBuf composite = PooledByteBufAllocator.DEFAULT.compositeBuffer(packetCount);
+            for (ByteBuf part : message.parts)
+                composite.addComponent(true, part);
+            return composite;
+        }
+
+        private long getMaxPendingBytes() {
+            //room for two messages of the largest allowed size in flight.
+            return 2L * PacketSplitter.this.maxPacketsPerMessage * MAX_PACKET_SIZE;
+        }
+
+        private void evictExpired(long now) {
+            var iterator = this.pending.int2ObjectEntrySet().iterator();
+            while (iterator.hasNext()) {
+                var entry = iterator.next();
+                if (now - entry.getValue().created > REASSEMBLY_TIMEOUT_MILLIS) {
+                    LogManager.getLogger().warn("Dropping split message " + entry.getIntKey() + " on Channel \"" +
+                            PacketSplitter.this.channelId + "\" after timeout.");
+                    this.pendingBytes -= entry.getValue().size;
+                    entry.getValue().release();
+                    iterator.remove();
+                    PacketSplitter.this.droppedReassemblies.incrementAndGet();
+                }
+            }
+        }
 
-    @Override
-    public String getMessage() {
-        return "Failure Splitting Packets on Channel \"" + this.channnelId.toString() + "\"." +
-                " Number of Packets sent " + this.actualSize + ", Number of Packets expected " + this.expectedSize + ", maximum number of packets for a message of this type " + this.maximumSize;
+        private void drop(int communicationId) {
+            PendingMessage message = this.pending.remove(communicationId);
+            if (message != null) {
+                this.pendingBytes -= message.size;
+                message.release();
+            }
+            PacketSplitter.this.droppedReassemblies.incrementAndGet();
+        }
     }
 
-}
\ No newline at end of file
+    private static class PendingMessage {
+        private final ByteBuf[] parts;
+        private final long created;
+        private int received;
+        private long size;
+
+        private PendingMessage(int packetCount, long created) {
+            this.parts = new ByteBuf[packetCount];
+            this.created = created;
+        }
+
+        private void release() {
+            for (ByteBuf part : this.parts) {
+                if (part != null)
+                    part.release();
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import com.klikli_dev.occultism.Occultism;
 import com.klikli_dev.occultism.common.command.DebugAICommand;
 import com.klikli_dev.occultism.common.command.NbtCommand;
 import com.klikli_dev.occultism.common.command.ShareNbtCommand;
+import com.klikli_dev.occultism.common.command.StorageStatsCommand;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.tree.LiteralCommandNode;
 import net.minecraft.commands.CommandSourceStack;
@@ -46,6 +47,7 @@ public class OccultismCommands {
                 Commands.literal(Occultism.MODID)
                         .then(NbtCommand.register(dispatcher))
                         .then(ShareNbtCommand.register(dispatcher))
+                        .then(StorageStatsCommand.register(dispatcher))
                         .then(debugCommand)
         );
 
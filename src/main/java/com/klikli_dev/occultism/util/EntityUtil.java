@@ -22,6 +22,7 @@
 
 package com.klikli_dev.occultism.util;
 
+import com.klikli_dev.occultism.common.entity.OccultismEntityIndex;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
@@ -47,12 +48,8 @@ public class EntityUtil {
      * @return Optional containing the player.
      */
     public static Optional<ServerPlayer> getPlayerByUuiDGlobal(UUID uuid) {
-        for (ServerLevel level : ServerLifecycleHooks.getCurrentServer().getAllLevels()) {
-            ServerPlayer player = (ServerPlayer) level.getPlayerByUUID(uuid);
-            if (player != null)
-                return Optional.of(player);
-        }
-        return Optional.empty();
+        //the player list already indexes players by uuid across all levels.
+        return Optional.ofNullable(ServerLifecycleHooks.getCurrentServer().getPlayerList().getPlayer(uuid));
     }
 
     /**
@@ -67,11 +64,17 @@ public class EntityUtil {
 
     /**
      * Gets the entity by given uuid. Call on server only!
+     * Spirits and familiars are found through the {@link OccultismEntityIndex}, other entities need a search through all
+     * levels.
      *
      * @param uuid the uuid of the entity
      * @return Optional containing the entity.
      */
     public static Optional<? extends Entity> getEntityByUuiDGlobal(MinecraftServer server, UUID uuid) {
+        Optional<Entity> indexed = OccultismEntityIndex.get(uuid);
+        if (indexed.isPresent())
+            return indexed;
+
         if (uuid != null && server != null) {
             for (ServerLevel level : server.getAllLevels()) {
                 Entity entity = level.getEntity(uuid);
@@ -24,7 +24,6 @@ package com.klikli_dev.occultism.util;
 
 import com.klikli_dev.occultism.api.common.blockentity.IStorageController;
 import com.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
-import com.klikli_dev.occultism.network.OccultismPackets;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.tags.TagKey;
@@ -87,7 +86,6 @@ public class StorageUtil {
 
             //finally if requested, send the updated storage controller contents to the player.
             if (sendStackUpdate) {
-                OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
                 ((AbstractContainerMenu) container).broadcastChanges();
             }
 
@@ -127,7 +125,6 @@ public class StorageUtil {
 
             //finally if requested, send the updated storage controller contents to the player.
             if (sendStackUpdate) {
-                OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
                 ((AbstractContainerMenu) container).broadcastChanges();
             }
         }